@@ -23,7 +23,9 @@ import static com.geberl.gcodesender.AbstractCommunicator.SerialCommunicatorEven
 
 import java.util.HashSet;
 import java.util.Set;
-import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -66,9 +68,8 @@ public abstract class AbstractCommunicator implements ICommunicator {
     /*********************/
     @Override
     public void resetBuffers() {
-        if (eventQueue != null) {
-            eventQueue.clear();
-        }
+        // Drop the events which are already queued, the event thread skips them.
+        discardEventsBefore = eventTail.get();
     }
 
     @Override
@@ -111,6 +112,7 @@ public abstract class AbstractCommunicator implements ICommunicator {
     @Override
     public void disconnect() throws Exception {
         this.stop = true;
+        LockSupport.unpark(this.eventThread);
         this.eventThread.interrupt();
         connection.closePort();
     }
@@ -149,7 +151,7 @@ public abstract class AbstractCommunicator implements ICommunicator {
         }
 
         if (launchEventsInDispatchThread) {
-            this.eventQueue.add(new EventData(event, string, command));
+            enqueueEvent(event, string, command);
         } else {
             sendEventToListeners(event, string, command);
         }
@@ -181,38 +183,156 @@ public abstract class AbstractCommunicator implements ICommunicator {
     /**
      * If commands complete very fast, like several comments in a row being
      * skipped, then multiple event handlers could process them out of order. To
-     * prevent that from happening we use a blocking queue to add events in the
-     * main thread, and process them in order a single event thread.
+     * prevent that from happening we add events to a queue in the main thread,
+     * and process them in order a single event thread.
+     *
+     * The queue is a ring of preallocated event slots. Producers claim a slot
+     * with a compare-and-set and publish it through the slot sequence, the event
+     * thread drains everything published in one pass and parks when the ring is
+     * empty. A full ring makes producers wait, so slow listeners throttle the
+     * stream instead of losing events.
+     */
+    private static final int EVENT_QUEUE_SIZE = 4096;
+    private static final int EVENT_QUEUE_MASK = EVENT_QUEUE_SIZE - 1;
+    private final EventData[] eventSlots = createEventSlots();
+    private final AtomicLong eventTail = new AtomicLong(0);   // Next slot to claim
+    private volatile long eventHead = 0;                      // Next slot to dispatch, only written by the event thread
+    private volatile long discardEventsBefore = 0;            // Set by resetBuffers
+    private volatile boolean eventThreadWaiting = false;
+    private volatile long eventLagNanos = 0;
+    private volatile boolean stop = false;
+    private Thread eventThread = new Thread(this::processEvents, "CommunicatorEvents");
+
+    private static EventData[] createEventSlots() {
+        EventData[] slots = new EventData[EVENT_QUEUE_SIZE];
+        for (int i = 0; i < slots.length; i++) {
+            slots[i] = new EventData(i);
+        }
+        return slots;
+    }
+
+    /**
+     * Returns the number of events waiting to be sent to the listeners.
+     */
+    public int getEventQueueDepth() {
+        return (int) Math.max(0, eventTail.get() - eventHead);
+    }
+
+    /**
+     * Returns how long the most recently dispatched event waited in the queue,
+     * a growing value means the listeners are falling behind the controller.
      */
-    private final LinkedBlockingDeque<EventData> eventQueue = new LinkedBlockingDeque<>();
-    private boolean stop = false;
-    private Thread eventThread = new Thread(() -> {
+    public long getEventLagMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(eventLagNanos);
+    }
+
+    private void enqueueEvent(final SerialCommunicatorEvent event,
+                              final String string, final GcodeCommand command) {
+        EventData slot;
+        long position;
+        while (true) {
+            position = eventTail.get();
+            slot = eventSlots[(int) position & EVENT_QUEUE_MASK];
+            long difference = slot.sequence - position;
+            if (difference == 0) {
+                if (eventTail.compareAndSet(position, position + 1)) {
+                    break;
+                }
+            } else if (difference < 0) {
+                // The ring is full, wait for the event thread to catch up.
+                if (stop) {
+                    return;
+                }
+                if (Thread.currentThread() == eventThread) {
+                    // A listener is producing events, it can't wait for itself.
+                    drainEvents();
+                } else {
+                    LockSupport.unpark(eventThread);
+                    LockSupport.parkNanos(this, 100_000);
+                }
+            }
+        }
+
+        slot.event = event;
+        slot.string = string;
+        slot.command = command;
+        slot.queuedNanos = System.nanoTime();
+        slot.sequence = position + 1;
+
+        if (eventThreadWaiting) {
+            LockSupport.unpark(eventThread);
+        }
+    }
+
+    /**
+     * Sends all published events to the listeners.
+     * @return the number of events taken from the queue.
+     */
+    private int drainEvents() {
+        int count = 0;
+        long position = eventHead;
+        while (true) {
+            EventData slot = eventSlots[(int) position & EVENT_QUEUE_MASK];
+            if (slot.sequence != position + 1) {
+                break;
+            }
+
+            SerialCommunicatorEvent event = slot.event;
+            String string = slot.string;
+            GcodeCommand command = slot.command;
+            long queuedNanos = slot.queuedNanos;
+
+            // Release the slot before dispatching, listeners may produce new events.
+            slot.event = null;
+            slot.string = null;
+            slot.command = null;
+            slot.sequence = position + EVENT_QUEUE_SIZE;
+            eventHead = ++position;
+            count++;
+
+            if (position > discardEventsBefore) {
+                eventLagNanos = System.nanoTime() - queuedNanos;
+                sendEventToListeners(event, string, command);
+            }
+        }
+        return count;
+    }
+
+    private void processEvents() {
         while (!stop) {
             try {
-                EventData e = eventQueue.take();
-                sendEventToListeners(e.event, e.string, e.command);
-            } catch (InterruptedException ignored) {
-                stop = true;
+                if (drainEvents() > 0) {
+                    continue;
+                }
+
+                // Check again after announcing that we wait to not miss a wakeup.
+                eventThreadWaiting = true;
+                if (getEventQueueDepth() == 0) {
+                    LockSupport.park(this);
+                }
+                eventThreadWaiting = false;
+
+                if (Thread.interrupted()) {
+                    stop = true;
+                }
             } catch (Exception e) {
                 logger.log(Level.WARNING, "Couldn't send event", e);
                 stop = true;
             }
         }
-    });
-
-    // Simple data class used to pass data to the event thread.
-    private class EventData {
-        public EventData(
-                SerialCommunicatorEvent event,
-                String string,
-                GcodeCommand command) {
-            this.event = event;
-            this.command = command;
-            this.string = string;
+    }
+
+    // Reusable slot used to pass data to the event thread.
+    private static class EventData {
+        EventData(long sequence) {
+            this.sequence = sequence;
         }
 
-        public SerialCommunicatorEvent event;
-        public GcodeCommand command;
-        public String string;
+        // Equal to the position when free, position + 1 when published.
+        volatile long sequence;
+        long queuedNanos;
+        SerialCommunicatorEvent event;
+        GcodeCommand command;
+        String string;
     }
 }
@@ -44,6 +44,8 @@ import static com.geberl.gcodesender.model.UnitUtils.Units.MM;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.Optional;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -419,6 +421,27 @@ public abstract class AbstractController implements CommunicatorListener, IContr
     public int getStatusUpdateRate() {
         return this.statusUpdateRate;
     }
+
+    @Override
+    public void setPipelinedMode(boolean enabled) {
+        if (this.comm != null) {
+            this.comm.setPipelinedMode(enabled);
+        }
+    }
+
+    @Override
+    public void setPlannerAwareMode(boolean enabled) {
+        if (this.comm != null) {
+            this.comm.setPlannerAwareMode(enabled);
+        }
+    }
+
+    @Override
+    public void setSenderThreadEnabled(boolean enabled) {
+        if (this.comm != null) {
+            this.comm.setSenderThreadEnabled(enabled);
+        }
+    }
     
     @Override
     public Boolean openCommPort(ConnectionDriver connectionDriver, String port, int portRate) throws Exception {
@@ -609,6 +632,20 @@ public abstract class AbstractController implements CommunicatorListener, IContr
      */
     @Override
     public void beginStreaming() throws Exception {
+        beginStreaming(null, false);
+    }
+
+    /**
+     * Send all queued commands to comm port, restoring a gcode state before
+     * the stream. Used to start a stream which has been moved to a later row.
+     * @param startState state of the program at the first streamed row, or
+     *                   null to stream without restoring a state.
+     * @param millMode true to approach the first row like a mill, see
+     *                 {@link GcodeUtils#generateStateRestoreCommands}.
+     * @throws java.lang.Exception
+     */
+    @Override
+    public void beginStreaming(GcodeState startState, boolean millMode) throws Exception {
 
         this.isReadyToStreamFile();
 
@@ -632,8 +669,18 @@ public abstract class AbstractController implements CommunicatorListener, IContr
         this.numCommandsCompleted = 0;
         updateNumCommands();
 
+        ControllerStatus status = getControllerStatus();
+        Position currentPosition = status == null ? null : status.getWorkCoord();
+        List<String> restoreCommands = startState == null ? Collections.emptyList()
+                : GcodeUtils.generateStateRestoreCommands(startState, currentPosition, millMode);
+        this.numCommands += restoreCommands.size();
+
         // Send all queued commands and streams then kick off the stream.
         try {
+            // Queued commands are sent before the stream.
+            for (String command : restoreCommands) {
+                comm.queueCommand(createCommand(command));
+            }
             if (this.streamCommands != null) {
                 comm.queueStreamForComm(this.streamCommands);
             }
@@ -732,7 +779,8 @@ public abstract class AbstractController implements CommunicatorListener, IContr
 
     private void updateNumCommands() {
         if (streamCommands != null) {
-            numCommands = streamCommands.getNumRows();
+            // A stream may start at a later row.
+            numCommands = streamCommands.getNumRowsRemaining();
         }
         numCommandsSkipped = 0;
         numCommandsCompleted = 0;
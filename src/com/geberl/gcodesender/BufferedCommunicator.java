@@ -22,7 +22,12 @@ package com.geberl.gcodesender;
 import static com.geberl.gcodesender.AbstractCommunicator.SerialCommunicatorEvent.*;
 
 import java.io.IOException;
+import java.util.Arrays;
+import java.util.Queue;
 import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
 // import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -31,6 +36,8 @@ import com.geberl.gcodesender.connection.ConnectionDriver;
 import com.geberl.gcodesender.types.GcodeCommand;
 import com.geberl.gcodesender.utils.CommUtils;
 import com.geberl.gcodesender.utils.IGcodeStreamReader;
+import com.geberl.gcodesender.utils.LinkLatencyEstimator;
+import com.geberl.gcodesender.utils.RingBufferQueue;
 
 /**
  * GRBL serial port interface class.
@@ -42,13 +49,35 @@ public abstract class BufferedCommunicator extends AbstractCommunicator {
 
     // Command streaming variables
     private Boolean sendPaused = false;
-    private GcodeCommand nextCommand;                      // Cached command.
+    private volatile GcodeCommand nextCommand;             // Cached command.
     private IGcodeStreamReader commandStream;               // Arbitrary number of commands
-    private final LinkedBlockingDeque<GcodeCommand> commandBuffer;     // Manually specified commands
-    private final LinkedBlockingDeque<GcodeCommand> activeCommandList;  // Currently running commands
-    private int sentBufferSize = 0;
+    private final Queue<GcodeCommand> commandBuffer;     // Manually specified commands
+    private final Queue<GcodeCommand> activeCommandList;  // Currently running commands
+    private final AtomicInteger sentBufferSize = new AtomicInteger(0);   // Bytes sent but not acknowledged
+    private static final byte[] M05_BYTES = {'M', '0', '5'};
     
     private Boolean singleStepModeEnabled = false;
+
+    // Optional thread which does all command writes, see setSenderThreadEnabled.
+    private boolean senderThreadEnabled = false;
+    private volatile Thread senderThread;
+    private final AtomicBoolean streamRequested = new AtomicBoolean(false);
+
+    // Reused between calls to sendCommands, every command that fits in the
+    // controller buffer is collected here and written at once.
+    private byte[] writeBuffer = new byte[0];
+    private int writeBufferLength = 0;
+
+    // Controller buffers learned from status reports, -1 until reported.
+    private volatile int maxRxBytesAvailable = -1;
+    private volatile int plannerBlocksAvailable = -1;
+    private boolean plannerAwareMode = false;
+
+    // Sends ahead of the acknowledgements on slow links, see setPipelinedMode.
+    private final LinkLatencyEstimator linkEstimator = new LinkLatencyEstimator();
+    private volatile boolean pipelinedMode = false;
+    // Only network links buffer the bytes sent ahead, set on connect.
+    private volatile boolean pipelinedLink = false;
     
     abstract public int getBufferSize();
 
@@ -57,10 +86,21 @@ public abstract class BufferedCommunicator extends AbstractCommunicator {
         this.activeCommandList = new LinkedBlockingDeque<>();
     }
 
-    public BufferedCommunicator(LinkedBlockingDeque<GcodeCommand> cb, LinkedBlockingDeque<GcodeCommand> asl) {
+    public BufferedCommunicator(Queue<GcodeCommand> cb, Queue<GcodeCommand> asl) {
         this.commandBuffer = cb;
         this.activeCommandList = asl;
     }
+
+    /**
+     * Uses preallocated ring buffers for both command queues instead of linked
+     * deques, so queueing and acknowledging commands doesn't allocate.
+     *
+     * @param commandBufferCapacity maximum number of manually queued commands.
+     * @param activeCommandCapacity maximum number of commands waiting for a response.
+     */
+    public BufferedCommunicator(int commandBufferCapacity, int activeCommandCapacity) {
+        this(new RingBufferQueue<>(commandBufferCapacity), new RingBufferQueue<>(activeCommandCapacity));
+    }
     
     @Override
     public void setSingleStepMode(boolean enable) {
@@ -72,10 +112,33 @@ public abstract class BufferedCommunicator extends AbstractCommunicator {
         return this.singleStepModeEnabled;
     }
 
+    /**
+     * When enabled a dedicated sender thread performs all command writes to the
+     * connection. The response handler only records acknowledgements and wakes
+     * the sender, so reading the next response never waits for a slow write.
+     * Real-time bytes from {@link #sendByteImmediately(byte)} are still written
+     * directly. Takes effect the next time the communicator connects.
+     *
+     * @param enabled true to stream from a dedicated thread.
+     */
+    @Override
+    public void setSenderThreadEnabled(boolean enabled) {
+        this.senderThreadEnabled = enabled;
+    }
+
+    public boolean isSenderThreadEnabled() {
+        return this.senderThreadEnabled;
+    }
+
     @Override
-    public void queueCommand(GcodeCommand command) {
-        // Add command to queue
-        this.commandBuffer.add(command);
+    public void queueCommand(GcodeCommand command) throws Exception {
+        // Add command to queue, the ring buffer allows only one producer at a time.
+        synchronized (this.commandBuffer) {
+            if (!this.commandBuffer.offer(command)) {
+                throw new Exception("Cannot queue command, " + this.commandBuffer.size()
+                        + " commands are already waiting to be sent.");
+            }
+        }
     }
 
     @Override
@@ -139,11 +202,128 @@ public abstract class BufferedCommunicator extends AbstractCommunicator {
         return commandBuffer.size();
     }
 
+    /**
+     * When enabled the number of unacknowledged commands is limited to the free
+     * planner blocks from the last status report, keeping at least one command
+     * waiting. The planner stays full without a serial buffer worth of commands
+     * queued behind it, which have to be flushed after a feed hold.
+     *
+     * @param enabled true to throttle on the reported planner blocks.
+     */
+    @Override
+    public void setPlannerAwareMode(boolean enabled) {
+        this.plannerAwareMode = enabled;
+    }
+
+    public boolean isPlannerAwareMode() {
+        return this.plannerAwareMode;
+    }
+
+    /**
+     * When enabled commands are sent ahead of their acknowledgements on links
+     * with a long round trip, like a TCP connection to a Wi-Fi bridge. The
+     * round trip of the status query and the rate at which commands are
+     * acknowledged give the number of bytes the controller consumes before
+     * newly sent bytes arrive, part of that is allowed in flight on top of
+     * the receive buffer. See {@link LinkLatencyEstimator}.
+     *
+     * The estimate can be wrong when the controller suddenly slows down, use
+     * it only with controllers or bridges which don't drop bytes when their
+     * buffer is full. The setting only applies to the TCP drivers, a serial
+     * controller drops the bytes which don't fit in its receive buffer.
+     *
+     * @param enabled true to send ahead of the acknowledgements.
+     */
+    @Override
+    public void setPipelinedMode(boolean enabled) {
+        this.pipelinedMode = enabled;
+        if (enabled && !this.pipelinedLink && this.isConnected()) {
+            logger.info("Pipelined streaming is only used with TCP connections, the setting is ignored.");
+        }
+    }
+
+    public boolean isPipelinedMode() {
+        return this.pipelinedMode;
+    }
+
+    /**
+     * Called by the concrete communicator when a status query is sent, to
+     * measure the round trip of the link in pipelined mode.
+     */
+    protected void statusRequested() {
+        if (isSendingAhead()) {
+            linkEstimator.statusRequested(System.nanoTime());
+        }
+    }
+
+    /**
+     * Called by the concrete communicator when a status report is received.
+     */
+    protected void statusReceived() {
+        if (isSendingAhead()) {
+            linkEstimator.statusReceived(System.nanoTime());
+        }
+    }
+
+    private boolean isSendingAhead() {
+        return this.pipelinedMode && this.pipelinedLink;
+    }
+
+    /**
+     * Returns the number of bytes which may be unacknowledged, the controller
+     * buffer plus the bytes sent ahead in pipelined mode.
+     */
+    private int getStreamingBufferSize() {
+        int bufferSize = this.getBufferSize();
+        if (!isSendingAhead()) {
+            return bufferSize;
+        }
+        return bufferSize + linkEstimator.getSendAhead(bufferSize, System.nanoTime());
+    }
+
+    /**
+     * Updates the controller buffer state from a status report, called by the
+     * concrete communicator when the controller reports it.
+     *
+     * A report taken while no bytes are unacknowledged is the receive buffer
+     * size, any other report is a lower bound of it. The size is learned from
+     * the first report with nothing in flight and only grows afterwards, so a
+     * report taken while streaming never shrinks it.
+     *
+     * @param plannerBlocks number of free planner blocks.
+     * @param rxBytes number of free bytes in the controller serial buffer.
+     */
+    protected void updateControllerBufferState(int plannerBlocks, int rxBytes) {
+        this.plannerBlocksAvailable = plannerBlocks;
+        boolean learned = this.maxRxBytesAvailable >= 0;
+        if ((learned || this.sentBufferSize.get() == 0) && rxBytes > this.maxRxBytesAvailable) {
+            this.maxRxBytesAvailable = rxBytes;
+            logger.log(Level.FINE, "Controller reported " + rxBytes + " free receive buffer bytes.");
+            // More room may have become available.
+            if (!isPaused()) {
+                streamCommands();
+            }
+        }
+    }
+
+    /**
+     * Returns the receive buffer size learned from status reports or -1 if
+     * the controller hasn't reported it. One byte is kept in reserve since a
+     * ring buffer reporting all bytes free can hold one less.
+     */
+    protected int getReportedBufferSize() {
+        int available = this.maxRxBytesAvailable;
+        return available > 1 ? available - 1 : -1;
+    }
+
     // Helper for determining if commands should be throttled.
     private boolean allowMoreCommands() {
         if (this.singleStepModeEnabled) {
             return this.activeCommandList.isEmpty();
         }
+        if (this.plannerAwareMode && this.plannerBlocksAvailable >= 0) {
+            return this.activeCommandList.size() < Math.max(1, this.plannerBlocksAvailable);
+        }
         return true;
     }
     
@@ -162,7 +342,7 @@ public abstract class BufferedCommunicator extends AbstractCommunicator {
             return nextCommand;
         }
         else if (!this.commandBuffer.isEmpty()) {
-            nextCommand = commandBuffer.pop();
+            nextCommand = commandBuffer.remove();
         }
         else try {
             if (commandStream != null && commandStream.ready()) {
@@ -182,17 +362,33 @@ public abstract class BufferedCommunicator extends AbstractCommunicator {
     }
    
     /**
-     * Streams anything in the command buffer to the comm port.
-     * Synchronized to prevent commands from sending out of order.
+     * Streams anything in the command buffer to the comm port. If the sender
+     * thread is running this only wakes it up.
      */
     @Override
-    synchronized public void streamCommands() {
+    public void streamCommands() {
+        if (senderThread != null) {
+            streamRequested.set(true);
+            LockSupport.unpark(senderThread);
+        } else {
+            sendCommands();
+        }
+    }
+
+    /**
+     * Sends commands while there is room in the controller buffer. All commands
+     * which fit are gathered and written to the connection with a single call.
+     * Synchronized to prevent commands from sending out of order.
+     */
+    synchronized private void sendCommands() {
         // If there are no commands to send, exit.
         if (this.getNextCommand() == null) {
             logger.log(Level.FINE, "There are no more commands to stream");
             return;
         }
         
+        int bufferSize = getStreamingBufferSize();
+
         // Send command if:
         // There is room in the buffer.
         // AND we are NOT paused
@@ -201,41 +397,82 @@ public abstract class BufferedCommunicator extends AbstractCommunicator {
         while (this.getNextCommand() != null &&
                 !isPaused() &&
                 CommUtils.checkRoomInBuffer(
-                    this.sentBufferSize,
-                    this.getNextCommand().getCommandString(),
-                    this.getBufferSize())
+                    this.sentBufferSize.get(),
+                    this.getNextCommand().getWireBytes().length,
+                    bufferSize)
                 && allowMoreCommands()) {
 
             GcodeCommand command = this.getNextCommand();
             
  
-            if (command.getCommandString().isEmpty()) {
+            // The wire bytes are already trimmed and encoded.
+            byte[] commandBytes = command.getWireBytes();
+            if (commandBytes.length == 0) {
                 dispatchListenerEvents(COMMAND_SKIPPED, command);
                 nextCommand = null;
                 continue;
             }
 
-            String commandString = command.getCommandString().trim();
+            String commandString = command.getCommandString();
             
             // make sure that no M00 is sent - M05 instead
-            if ((commandString.toUpperCase()).equals("M00")) {
+            if (isM00(commandBytes)) {
             	logger.log(Level.INFO, "No M00 is sent - instead M05 to stop");
             	commandString = "M05";
+            	commandBytes = M05_BYTES;
             }
  
-            this.activeCommandList.add(command);
-            this.sentBufferSize += (commandString.length() + 1);
-            
-            try {
-                this.sendingCommand(commandString);
-                connection.sendStringToComm(commandString + "\n");
-                dispatchListenerEvents(COMMAND_SENT, command);
-                nextCommand = null;
-            } catch (Exception e) {
-                e.printStackTrace();
-                System.exit(-1);
+            // A bounded active list is full, wait for the next response.
+            if (!this.activeCommandList.offer(command)) {
+                break;
             }
-         }
+            // M05 has the same length as M00, so the response handler can use the wire bytes too.
+            this.sentBufferSize.addAndGet(commandBytes.length + 1);
+            
+            this.sendingCommand(commandString);
+            appendToWriteBuffer(commandBytes);
+            // Dispatched before the batch is written which keeps the event order
+            // with skipped commands, the write happens before this method returns.
+            dispatchListenerEvents(COMMAND_SENT, command);
+            nextCommand = null;
+        }
+
+        flushWriteBuffer();
+    }
+
+    private static boolean isM00(byte[] command) {
+        return command.length == 3
+                && (command[0] == 'M' || command[0] == 'm')
+                && command[1] == '0'
+                && command[2] == '0';
+    }
+
+    /**
+     * Adds the encoded command and its line terminator to the write buffer.
+     */
+    private void appendToWriteBuffer(byte[] command) {
+        int required = writeBufferLength + command.length + 1;
+        if (required > writeBuffer.length) {
+            writeBuffer = Arrays.copyOf(writeBuffer, Math.max(required, Math.max(getBufferSize(), writeBuffer.length * 2)));
+        }
+
+        System.arraycopy(command, 0, writeBuffer, writeBufferLength, command.length);
+        writeBufferLength += command.length;
+        writeBuffer[writeBufferLength++] = '\n';
+    }
+
+    private void flushWriteBuffer() {
+        if (writeBufferLength == 0) {
+            return;
+        }
+
+        try {
+            connection.sendBytesToComm(writeBuffer, writeBufferLength);
+            writeBufferLength = 0;
+        } catch (Exception e) {
+            e.printStackTrace();
+            System.exit(-1);
+        }
     }
     
     @Override
@@ -259,9 +496,17 @@ public abstract class BufferedCommunicator extends AbstractCommunicator {
         this.nextCommand = null;
         this.commandBuffer.clear();
         this.activeCommandList.clear();
+        if (this.commandStream != null) {
+            // Stops any read ahead of the stream.
+            try {
+                this.commandStream.close();
+            } catch (IOException e) {
+                logger.log(Level.WARNING, "Couldn't close the gcode stream", e);
+            }
+        }
         this.commandStream = null;
         this.sendPaused = false;
-        this.sentBufferSize = 0;
+        this.sentBufferSize.set(0);
     }
 
     /**
@@ -312,8 +557,11 @@ public abstract class BufferedCommunicator extends AbstractCommunicator {
         if (processedCommand(response)) {
             // Pop the front of the active list.
             if (this.activeCommandList != null && this.activeCommandList.size() > 0) {
-                GcodeCommand command = this.activeCommandList.pop();
-                this.sentBufferSize -= (command.getCommandString().length() + 1);
+                GcodeCommand command = this.activeCommandList.remove();
+                this.sentBufferSize.addAndGet(-(command.getWireBytes().length + 1));
+                if (isSendingAhead()) {
+                    linkEstimator.acknowledged(command.getWireBytes().length + 1, System.nanoTime());
+                }
 
                 if (!isPaused()) {
                     this.streamCommands();
@@ -328,12 +576,26 @@ public abstract class BufferedCommunicator extends AbstractCommunicator {
 
         this.commandBuffer.clear();
         this.activeCommandList.clear();
-        this.sentBufferSize = 0;
+        this.sentBufferSize.set(0);
+        this.maxRxBytesAvailable = -1;
+        this.plannerBlocksAvailable = -1;
+        this.linkEstimator.reset();
+        this.pipelinedLink = connectionDriver == ConnectionDriver.TCP
+                || connectionDriver == ConnectionDriver.TCP_NIO;
+        if (this.pipelinedMode && !this.pipelinedLink) {
+            logger.info("Pipelined streaming is only used with TCP connections, the setting is ignored for "
+                    + connectionDriver.getPrettyName() + ".");
+        }
+
+        if (senderThreadEnabled) {
+            startSenderThread();
+        }
     }
 
     @Override
     public void disconnect() throws Exception {
         this.cancelSend();
+        stopSenderThread();
         super.disconnect();
         
         this.sendPaused = false;
@@ -345,4 +607,47 @@ public abstract class BufferedCommunicator extends AbstractCommunicator {
     public void sendByteImmediately(byte b) throws Exception {
         connection.sendByteImmediately(b);
     }
+
+    private void startSenderThread() {
+        stopSenderThread();
+        Thread thread = new Thread(this::senderLoop, "GcodeSender");
+        thread.setDaemon(true);
+        senderThread = thread;
+        thread.start();
+    }
+
+    private void stopSenderThread() {
+        Thread thread = senderThread;
+        senderThread = null;
+        if (thread != null) {
+            thread.interrupt();
+        }
+    }
+
+    /**
+     * Sends whenever a stream is requested and parks in between. A request
+     * arriving while sending is picked up on the next pass. A failed send is
+     * logged and the loop goes on, if the thread still dies streamCommands
+     * falls back to sending on the calling thread.
+     */
+    private void senderLoop() {
+        Thread self = Thread.currentThread();
+        try {
+            while (senderThread == self && !self.isInterrupted()) {
+                if (streamRequested.getAndSet(false)) {
+                    try {
+                        sendCommands();
+                    } catch (RuntimeException e) {
+                        logger.log(Level.SEVERE, "Error while sending commands.", e);
+                    }
+                } else {
+                    LockSupport.park(this);
+                }
+            }
+        } finally {
+            if (senderThread == self) {
+                senderThread = null;
+            }
+        }
+    }
 }
@@ -22,6 +22,7 @@ import java.util.concurrent.LinkedBlockingDeque;
 import java.util.regex.Pattern;
 
 import com.geberl.gcodesender.connection.Connection;
+import com.geberl.gcodesender.listeners.ControllerStatus.BufferState;
 import com.geberl.gcodesender.types.GcodeCommand;
 
 /**
@@ -35,6 +36,14 @@ public class GrblCommunicator extends BufferedCommunicator {
     
     protected GrblCommunicator() {}
 
+    /**
+     * Creates a communicator with preallocated ring buffers for the command
+     * queues, see {@link BufferedCommunicator#BufferedCommunicator(int, int)}.
+     */
+    public GrblCommunicator(int commandBufferCapacity, int activeCommandCapacity) {
+        super(commandBufferCapacity, activeCommandCapacity);
+    }
+
     /**
      * This constructor is for dependency injection so a mock serial device can
      * act as GRBL.
@@ -49,9 +58,34 @@ public class GrblCommunicator extends BufferedCommunicator {
         this.connection.addListener(this);
     }
 
+    /**
+     * The receive buffer size reported through the "Bf:" status field, or the
+     * stock GRBL size if the controller doesn't report it.
+     */
     @Override
     public int getBufferSize() {
-        return GrblUtils.GRBL_RX_BUFFER_SIZE;
+        int reported = getReportedBufferSize();
+        return reported > 0 ? reported : GrblUtils.GRBL_RX_BUFFER_SIZE;
+    }
+
+    @Override
+    public void sendByteImmediately(byte b) throws Exception {
+        if (b == GrblUtils.GRBL_STATUS_COMMAND) {
+            statusRequested();
+        }
+        super.sendByteImmediately(b);
+    }
+
+    @Override
+    public void handleResponseMessage(String response) {
+        if (response.startsWith("<")) {
+            statusReceived();
+            BufferState bufferState = GrblUtils.getBufferStateFromStatusString(response);
+            if (bufferState != null) {
+                updateControllerBufferState(bufferState.plannerBlocksAvailable, bufferState.rxBytesAvailable);
+            }
+        }
+        super.handleResponseMessage(response);
     }
 
     @Override
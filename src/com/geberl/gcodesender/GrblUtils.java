@@ -25,6 +25,7 @@ import org.apache.commons.lang3.StringUtils;
 import com.geberl.gcodesender.listeners.ControllerState;
 import com.geberl.gcodesender.listeners.ControllerStatus;
 import com.geberl.gcodesender.listeners.ControllerStatus.AccessoryStates;
+import com.geberl.gcodesender.listeners.ControllerStatus.BufferState;
 import com.geberl.gcodesender.listeners.ControllerStatus.EnabledPins;
 import com.geberl.gcodesender.listeners.ControllerStatus.OverridePercents;
 import com.geberl.gcodesender.model.Alarm;
@@ -465,6 +466,7 @@ public class GrblUtils {
             OverridePercents overrides = null;
             EnabledPins pins = null;
             AccessoryStates accessoryStates = null;
+            BufferState bufferState = null;
 
             double feedSpeed = 0;
             double spindleSpeed = 0;
@@ -521,6 +523,9 @@ public class GrblUtils {
                     String value = part.substring(part.indexOf(':')+1);
                     accessoryStates = new AccessoryStates(value);
                 }
+                else if (part.startsWith("Bf:")) {
+                    bufferState = getBufferStateFromStatusString(part);
+                }
             }
 
             // Grab WCO from state information if necessary.
@@ -559,8 +564,44 @@ public class GrblUtils {
             }
 
             ControllerState state = getControllerStateFromStateString(stateString);
-            return new ControllerStatus(stateString, machineModeString, state, MPos, WPos, feedSpeed, reportingUnits, spindleSpeed, overrides, WCO, pins, accessoryStates);
+            return new ControllerStatus(stateString, machineModeString, state, MPos, WPos, feedSpeed, reportingUnits, spindleSpeed, overrides, WCO, pins, accessoryStates, bufferState);
+        }
+    }
+
+    /**
+     * Parses the buffer field of a GRBL 1.x status string: "Bf:15,128" is the
+     * number of available planner blocks and available bytes in the serial
+     * receive buffer. Works on a complete status string or on the field alone.
+     * @return the buffer state or null if there is no valid "Bf:" field.
+     */
+    static public BufferState getBufferStateFromStatusString(final String status) {
+        int start = status.indexOf("Bf:");
+        if (start < 0) {
+            return null;
+        }
+
+        int index = start + 3;
+        int planner = 0;
+        int digits = 0;
+        while (index < status.length() && Character.isDigit(status.charAt(index))) {
+            planner = planner * 10 + (status.charAt(index++) - '0');
+            digits++;
+        }
+        if (digits == 0 || index >= status.length() || status.charAt(index++) != ',') {
+            return null;
+        }
+
+        int rx = 0;
+        digits = 0;
+        while (index < status.length() && Character.isDigit(status.charAt(index))) {
+            rx = rx * 10 + (status.charAt(index++) - '0');
+            digits++;
+        }
+        if (digits == 0) {
+            return null;
         }
+
+        return new BufferState(planner, rx);
     }
 
     /**
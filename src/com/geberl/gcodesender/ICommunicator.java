@@ -41,8 +41,9 @@ public interface ICommunicator extends IConnectionListener {
      * Invoke the method {@link #streamCommands()} to start sending any queued commands.
      *
      * @param command the command to send
+     * @throws Exception if the queue is bounded and full
      */
-    void queueCommand(GcodeCommand command);
+    void queueCommand(GcodeCommand command) throws Exception;
 
     /**
      * Arbitrary length of commands to send to the communicator which will be added
@@ -150,6 +151,31 @@ public interface ICommunicator extends IConnectionListener {
      */
     void setSingleStepMode(boolean enable);
 
+    /**
+     * Enables or disables sending commands ahead of their acknowledgements on
+     * links with a long round trip, like a TCP connection to a Wi-Fi bridge.
+     *
+     * @param enabled set to true to send ahead of the acknowledgements.
+     */
+    void setPipelinedMode(boolean enabled);
+
+    /**
+     * Enables or disables limiting the unacknowledged commands to the free
+     * planner blocks reported by the hardware.
+     *
+     * @param enabled set to true to throttle on the reported planner blocks.
+     */
+    void setPlannerAwareMode(boolean enabled);
+
+    /**
+     * Enables or disables a dedicated thread for writing streamed commands to
+     * the hardware, so reading responses never waits for a write. Takes effect
+     * the next time the communicator connects.
+     *
+     * @param enabled set to true to stream from a dedicated thread.
+     */
+    void setSenderThreadEnabled(boolean enabled);
+
     /**
      * Removes listeners for notifying about the progress for sending commands.
      *
@@ -146,6 +146,12 @@ public interface IController {
     void setStatusUpdateRate(int rate);
     int getStatusUpdateRate();
 
+    void setPipelinedMode(boolean enabled);
+
+    void setPlannerAwareMode(boolean enabled);
+
+    void setSenderThreadEnabled(boolean enabled);
+
     /*
     Serial
     */
@@ -171,6 +177,7 @@ public interface IController {
     Stream control
     */
     void beginStreaming() throws Exception;
+    void beginStreaming(GcodeState startState, boolean millMode) throws Exception;
     void pauseStreaming() throws Exception;
     void resumeStreaming() throws Exception;
     Boolean isPaused();
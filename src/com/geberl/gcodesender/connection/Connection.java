@@ -19,6 +19,7 @@
 
 package com.geberl.gcodesender.connection;
 
+import java.nio.charset.StandardCharsets;
 import java.util.List;
 
 /**
@@ -47,6 +48,12 @@ public interface Connection {
      * Example with a TCP port using TCPConnection driver to example.com and port 9001
      * tcp://example.com:9001
      *
+     * Example with a TCP port using the non-blocking NIOTCPConnection driver
+     * tcpnio://example.com:9001
+     *
+     * Example with a simulated GRBL controller emulating 115200 baud
+     * grblsim://grbl:115200
+     *
      * @param uri the connection uri for the hardware to connect to
      */
     void setUri(String uri);
@@ -81,6 +88,18 @@ public interface Connection {
      */
     void sendStringToComm(String command) throws Exception;
 
+    /**
+     * Sends already encoded commands to the device. Used when several commands
+     * are written at once, connections should override this to write the bytes
+     * without creating an intermediate string.
+     *
+     * @param bytes  buffer holding the ASCII encoded commands including terminators.
+     * @param length number of bytes from the start of the buffer to send.
+     */
+    default void sendBytesToComm(byte[] bytes, int length) throws Exception {
+        sendStringToComm(new String(bytes, 0, length, StandardCharsets.US_ASCII));
+    }
+
     /**
      * Checks if the communication is established
      *
@@ -26,7 +26,9 @@ package com.geberl.gcodesender.connection;
 public enum ConnectionDriver {
     JSERIALCOMM("JSerialComm", "jserialcomm://"),
     JSSC("JSSC", "jssc://"),
-    TCP("TCP", "tcp://");
+    TCP("TCP", "tcp://"),
+    TCP_NIO("TCP (NIO)", "tcpnio://"),
+    SIMULATOR("GRBL Simulator", "grblsim://");
 
     private final String prettyName;
     private final String protocol;
@@ -65,6 +65,10 @@ public class ConnectionFactory {
             return Optional.of(new JSSCConnection());
         } else if (connectionDriver == ConnectionDriver.TCP) {
             return Optional.of(new TCPConnection());
+        } else if (connectionDriver == ConnectionDriver.TCP_NIO) {
+            return Optional.of(new NIOTCPConnection());
+        } else if (connectionDriver == ConnectionDriver.SIMULATOR) {
+            return Optional.of(new GrblSimulatorConnection());
         }
         return Optional.empty();
     }
@@ -0,0 +1,887 @@
+/*
+    Copyright 2026 Stephan Geberl
+
+    This file is part of WireCutter/Mill GCode - Sender (WGS) (5 Axis-Version).
+    WGS is derived from UGS by Will Winder (2012 - 2018)
+
+    WGS is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    UGS is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with WGS.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.geberl.gcodesender.connection;
+
+import com.geberl.gcodesender.GrblUtils;
+import com.geberl.gcodesender.gcode.GcodeParser;
+import com.geberl.gcodesender.gcode.GcodeParser.GcodeMeta;
+import com.geberl.gcodesender.gcode.GcodePreprocessorUtils;
+import com.geberl.gcodesender.gcode.GcodeState;
+import com.geberl.gcodesender.gcode.util.ArcTessellation;
+import com.geberl.gcodesender.gcode.util.GcodeParserException;
+import com.geberl.gcodesender.gcode.util.PlaneFormatter;
+import com.geberl.gcodesender.model.Position;
+import com.geberl.gcodesender.types.PointSegment;
+import org.apache.commons.lang3.StringUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A simulated GRBL 1.1 controller, for measuring streaming throughput and
+ * latency without a machine. Unlike the LoopBackConnection it behaves like
+ * the firmware:
+ *
+ *  - bytes travel at the emulated baud rate in both directions, 10 bits per
+ *    byte,
+ *  - the receive buffer has a fixed size, bytes arriving while it is full are
+ *    dropped and counted like on the real controller,
+ *  - real-time commands are picked out of the byte stream on arrival,
+ *  - a line is parsed when it is complete and a planner block is free, the
+ *    "ok" is sent once the motion is planned,
+ *  - the planner limits the speed at the junctions and plans acceleration
+ *    over the queued blocks, motion is integrated in small time steps,
+ *  - status reports contain the interpolated MPos, Bf:, FS: and Ov:.
+ *
+ * Arcs are planned as one block and the axes share one acceleration and
+ * maximum rate. The URI is grblsim://grbl:baud, "grbl-256" as port name gives
+ * a receive buffer of 256 bytes.
+ */
+public class GrblSimulatorConnection extends AbstractConnection {
+    private static final String PORT_NAME = "grbl";
+    private static final String VERSION = "Grbl 1.1f ['$' for help]";
+
+    private static final int AXES = 5;
+    private static final double MM_PER_INCH = 25.4;
+
+    // The simulation runs every tick, motion is integrated in steps.
+    private static final long TICK_NANOS = 100_000;
+    private static final double STEP_SECONDS = 50e-6;
+
+    // Speed of a junction with a full reversal, in mm/s.
+    private static final double MINIMUM_JUNCTION_SPEED = 0.0;
+
+    private int rxBufferSize = 128;
+    private int plannerBlockCount = 15;
+    private double acceleration = 500;          // mm/s^2
+    private double maxRate = 5000;              // mm/min
+    private double junctionDeviation = 0.01;    // mm
+    private long byteNanos = 0;
+
+    private volatile boolean open = false;
+    private Thread simulatorThread;
+
+    // Written by the host, guarded by input. inputWireTime is when the last
+    // byte taken from the queue finished arriving.
+    private final ByteQueue input = new ByteQueue(256);
+    private long inputWireTime;
+    private byte[] wire = new byte[256];
+
+    // The controller, only used by the simulator thread.
+    private ByteQueue rx;
+    private int rxLines = 0;
+    private long rxOverflows = 0;
+    private final StringBuilder line = new StringBuilder();
+    private final List<Block> planner = new ArrayList<>();
+    private GcodeParser parser;
+    private final double[] machine = new double[AXES];
+    private double speed = 0;                   // mm/s
+    private boolean hold = false;
+    private boolean checkMode = false;
+    private boolean spindleOn = false;
+    private int feedOverride = 100;
+    private int rapidOverride = 100;
+    private int spindleOverride = 100;
+    private final Map<Integer, String> settings = new TreeMap<>();
+
+    // Sent to the host, outputWireTime is when the last sent byte finished.
+    private final ByteQueue output = new ByteQueue(256);
+    private long outputWireTime;
+    private final byte[] delivery = new byte[256];
+    private long now;
+
+    /**
+     * A planned linear move or arc, in mm.
+     */
+    private static final class Block {
+        final double[] start = new double[AXES];
+        final double[] target = new double[AXES];
+        final double[] unit = new double[AXES];
+        double length;
+        double nominalSpeed;                    // mm/s without overrides
+        boolean rapid;
+        boolean jog;
+        double maxJunctionSpeed;
+        double entrySpeed;
+        double travelled;
+    }
+
+    public GrblSimulatorConnection() {
+        initSettings();
+    }
+
+    @Override
+    public void setUri(String uri) {
+        try {
+            String name = StringUtils.substringBetween(uri, ConnectionDriver.SIMULATOR.getProtocol(), ":");
+            int baud = Integer.parseInt(StringUtils.substringAfterLast(uri, ":"));
+            if (name != null && name.startsWith(PORT_NAME + "-")) {
+                setRxBufferSize(Integer.parseInt(name.substring(PORT_NAME.length() + 1)));
+            }
+            setBaudRate(baud);
+        } catch (Exception e) {
+            throw new ConnectionException("Couldn't parse connection string " + uri, e);
+        }
+    }
+
+    /**
+     * @param rxBufferSize the size of the serial receive buffer, GRBL holds
+     *                     one byte less.
+     */
+    public void setRxBufferSize(int rxBufferSize) {
+        if (rxBufferSize < 2) {
+            throw new ConnectionException("The receive buffer must hold at least one byte.");
+        }
+        this.rxBufferSize = rxBufferSize;
+    }
+
+    /**
+     * @param plannerBlockCount the number of usable planner blocks.
+     */
+    public void setPlannerBlockCount(int plannerBlockCount) {
+        this.plannerBlockCount = Math.max(1, plannerBlockCount);
+    }
+
+    /**
+     * @param acceleration the acceleration of all axes in mm/s^2.
+     */
+    public void setAcceleration(double acceleration) {
+        this.acceleration = acceleration;
+        for (int axis = 0; axis < AXES; axis++) {
+            settings.put(120 + axis, format(acceleration));
+        }
+    }
+
+    /**
+     * @param maxRate the maximum rate of all axes in mm/min, used for rapids.
+     */
+    public void setMaxRate(double maxRate) {
+        this.maxRate = maxRate;
+        for (int axis = 0; axis < AXES; axis++) {
+            settings.put(110 + axis, format(maxRate));
+        }
+    }
+
+    public void setJunctionDeviation(double junctionDeviation) {
+        this.junctionDeviation = junctionDeviation;
+        settings.put(11, format(junctionDeviation));
+    }
+
+    /**
+     * @param baudRate the emulated baud rate, 0 transfers bytes instantly.
+     */
+    public void setBaudRate(int baudRate) {
+        this.byteNanos = baudRate > 0 ? 10_000_000_000L / baudRate : 0;
+    }
+
+    /**
+     * @return the number of bytes dropped because the receive buffer was full.
+     */
+    public long getRxOverflows() {
+        return rxOverflows;
+    }
+
+    @Override
+    public synchronized boolean openPort() throws Exception {
+        if (open) {
+            return true;
+        }
+        rx = new ByteQueue(rxBufferSize);
+        now = System.nanoTime();
+        inputWireTime = now;
+        outputWireTime = now;
+        reset();
+
+        open = true;
+        simulatorThread = new Thread(this::simulate, "GrblSimulator");
+        simulatorThread.setDaemon(true);
+        simulatorThread.start();
+        return true;
+    }
+
+    @Override
+    public synchronized void closePort() throws Exception {
+        open = false;
+        if (simulatorThread != null) {
+            simulatorThread.interrupt();
+            simulatorThread.join(1000);
+            simulatorThread = null;
+        }
+    }
+
+    @Override
+    public boolean isOpen() {
+        return open;
+    }
+
+    @Override
+    public List<String> getPortNames() {
+        return Arrays.asList(PORT_NAME, PORT_NAME + "-256", PORT_NAME + "-1024");
+    }
+
+    @Override
+    public void sendByteImmediately(byte b) throws Exception {
+        sendBytesToComm(new byte[]{b}, 1);
+    }
+
+    @Override
+    public void sendStringToComm(String command) throws Exception {
+        byte[] bytes = command.getBytes(StandardCharsets.US_ASCII);
+        sendBytesToComm(bytes, bytes.length);
+    }
+
+    @Override
+    public void sendBytesToComm(byte[] bytes, int length) throws Exception {
+        if (!open) {
+            throw new ConnectionException("The simulator isn't running.");
+        }
+        synchronized (input) {
+            // An idle line starts sending now.
+            if (input.isEmpty()) {
+                inputWireTime = Math.max(inputWireTime, System.nanoTime());
+            }
+            input.add(bytes, 0, length);
+        }
+    }
+
+    private void simulate() {
+        long last = System.nanoTime();
+        while (open && !Thread.currentThread().isInterrupted()) {
+            now = System.nanoTime();
+            receive();
+            processLines();
+            advance((now - last) / 1e9);
+            last = now;
+            transmit();
+            LockSupport.parkNanos(TICK_NANOS);
+        }
+    }
+
+    /**
+     * Takes the bytes which arrived by now off the wire.
+     */
+    private void receive() {
+        int count = 0;
+        synchronized (input) {
+            while (!input.isEmpty() && (byteNanos == 0 || inputWireTime + byteNanos <= now)) {
+                if (count == wire.length) {
+                    wire = Arrays.copyOf(wire, wire.length * 2);
+                }
+                wire[count++] = input.poll();
+                inputWireTime += byteNanos;
+            }
+        }
+
+        for (int i = 0; i < count; i++) {
+            byte b = wire[i];
+            if (isRealTimeCommand(b)) {
+                realTimeCommand(b);
+            } else if (rx.size() >= rxBufferSize - 1) {
+                rxOverflows++;
+            } else {
+                rx.add(b);
+                if (b == '\n' || b == '\r') {
+                    rxLines++;
+                }
+            }
+        }
+    }
+
+    private static boolean isRealTimeCommand(byte b) {
+        return b == GrblUtils.GRBL_STATUS_COMMAND || b == GrblUtils.GRBL_PAUSE_COMMAND
+                || b == GrblUtils.GRBL_RESUME_COMMAND || b == GrblUtils.GRBL_RESET_COMMAND
+                || (b & 0x80) != 0;
+    }
+
+    private void realTimeCommand(byte b) {
+        switch (b) {
+            case GrblUtils.GRBL_STATUS_COMMAND:
+                respond(statusReport());
+                return;
+            case GrblUtils.GRBL_PAUSE_COMMAND:
+                hold = !planner.isEmpty();
+                return;
+            case GrblUtils.GRBL_RESUME_COMMAND:
+                hold = false;
+                return;
+            case GrblUtils.GRBL_RESET_COMMAND:
+                reset();
+                return;
+            case GrblUtils.GRBL_JOG_CANCEL_COMMAND:
+                planner.removeIf(block -> block.jog);
+                if (planner.isEmpty()) {
+                    speed = 0;
+                }
+                return;
+            default:
+                break;
+        }
+
+        switch (b & 0xFF) {
+            case 0x90: feedOverride = 100; break;
+            case 0x91: feedOverride = Math.min(200, feedOverride + 10); break;
+            case 0x92: feedOverride = Math.max(10, feedOverride - 10); break;
+            case 0x93: feedOverride = Math.min(200, feedOverride + 1); break;
+            case 0x94: feedOverride = Math.max(10, feedOverride - 1); break;
+            case 0x95: rapidOverride = 100; break;
+            case 0x96: rapidOverride = 50; break;
+            case 0x97: rapidOverride = 25; break;
+            case 0x99: spindleOverride = 100; break;
+            case 0x9A: spindleOverride = Math.min(200, spindleOverride + 10); break;
+            case 0x9B: spindleOverride = Math.max(10, spindleOverride - 10); break;
+            case 0x9C: spindleOverride = Math.min(200, spindleOverride + 1); break;
+            case 0x9D: spindleOverride = Math.max(10, spindleOverride - 1); break;
+            default: return;
+        }
+        replan();
+    }
+
+    /**
+     * Soft reset: clears the receive buffer, the planner and the parser state
+     * and sends the welcome message. The position is kept.
+     */
+    private void reset() {
+        rx.clear();
+        rxLines = 0;
+        line.setLength(0);
+        planner.clear();
+        speed = 0;
+        hold = false;
+        checkMode = false;
+        spindleOn = false;
+        feedOverride = 100;
+        rapidOverride = 100;
+        spindleOverride = 100;
+
+        parser = new GcodeParser();
+        Position p = parser.getCurrentState().currentPoint;
+        p.x = machine[0];
+        p.y = machine[1];
+        p.z = machine[2];
+        p.a = machine[3];
+        p.b = machine[4];
+        respond("");
+        respond(VERSION);
+    }
+
+    /**
+     * Executes complete lines while there is a free planner block.
+     */
+    private void processLines() {
+        while (rxLines > 0 && planner.size() < plannerBlockCount) {
+            line.setLength(0);
+            while (true) {
+                byte b = rx.poll();
+                if (b == '\n' || b == '\r') {
+                    rxLines--;
+                    break;
+                }
+                line.append((char) b);
+            }
+            execute(line.toString().trim());
+        }
+    }
+
+    private void execute(String command) {
+        if (command.isEmpty()) {
+            respond("ok");
+            return;
+        }
+        if (command.charAt(0) == '$') {
+            systemCommand(command.toUpperCase(Locale.US).replace(" ", ""));
+            return;
+        }
+
+        Position start = new Position(parser.getCurrentState().currentPoint);
+        List<GcodeMeta> moves;
+        try {
+            moves = parser.addCommand(command);
+        } catch (GcodeParserException e) {
+            respond("error:20");
+            return;
+        }
+        updateSpindle(command);
+
+        if (!checkMode) {
+            for (GcodeMeta meta : moves) {
+                if (!plan(start, meta.point, meta.state, false)) {
+                    respond("error:22");
+                    return;
+                }
+                start = meta.point.point();
+            }
+        }
+        respond("ok");
+    }
+
+    private void systemCommand(String command) {
+        if (command.startsWith("$J=")) {
+            jog(command.substring(3));
+            return;
+        }
+
+        switch (command) {
+            case "$":
+                respond("[HLP:$$ $# $G $I $N $x=val $Nx=line $J=line $SLP $C $X $H ~ ! ? ctrl-x]");
+                break;
+            case "$$":
+                for (Map.Entry<Integer, String> setting : settings.entrySet()) {
+                    respond("$" + setting.getKey() + "=" + setting.getValue());
+                }
+                break;
+            case "$#":
+                for (String offset : new String[]{"G54", "G55", "G56", "G57", "G58", "G59", "G28", "G30", "G92"}) {
+                    respond("[" + offset + ":0.000,0.000,0.000,0.000,0.000]");
+                }
+                respond("[TLO:0.000]");
+                respond("[PRB:0.000,0.000,0.000,0.000,0.000:0]");
+                break;
+            case "$G":
+                respond(parserState());
+                break;
+            case "$I":
+                respond("[VER:1.1f.20170801:]");
+                respond("[OPT:V," + plannerBlockCount + "," + rxBufferSize + "]");
+                break;
+            case "$N":
+                respond("$N0=");
+                respond("$N1=");
+                break;
+            case "$C":
+                checkMode = !checkMode;
+                respond(checkMode ? "[MSG:Enabled]" : "[MSG:Disabled]");
+                if (!checkMode) {
+                    respond("ok");
+                    reset();
+                    return;
+                }
+                break;
+            case "$H":
+                Arrays.fill(machine, 0);
+                reset();
+                break;
+            case "$X":
+            case "$SLP":
+                break;
+            default:
+                if (!setting(command)) {
+                    respond("error:3");
+                    return;
+                }
+        }
+        respond("ok");
+    }
+
+    // Changes a "$x=val" setting, returns false if it isn't one.
+    private boolean setting(String command) {
+        int equals = command.indexOf('=');
+        if (equals < 2) {
+            return false;
+        }
+        try {
+            int number = Integer.parseInt(command.substring(1, equals));
+            double value = Double.parseDouble(command.substring(equals + 1));
+            if (number == 11) {
+                setJunctionDeviation(value);
+            } else if (number >= 110 && number < 110 + AXES) {
+                setMaxRate(value);
+            } else if (number >= 120 && number < 120 + AXES) {
+                setAcceleration(value);
+            } else {
+                settings.put(number, command.substring(equals + 1));
+            }
+            return true;
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+
+    /**
+     * A jog is planned without changing the parser state.
+     */
+    private void jog(String command) {
+        GcodeState state = parser.getCurrentState().copy();
+        Position start = new Position(state.currentPoint);
+        try {
+            for (GcodeMeta meta : GcodeParser.processCommand(command, 0, state)) {
+                if (meta.point == null) {
+                    continue;
+                }
+                if (!plan(start, meta.point, meta.state, true)) {
+                    respond("error:22");
+                    return;
+                }
+                start = meta.point.point();
+            }
+        } catch (GcodeParserException e) {
+            respond("error:20");
+            return;
+        }
+        respond("ok");
+    }
+
+    private void updateSpindle(String command) {
+        String upper = command.toUpperCase(Locale.US);
+        for (int i = upper.indexOf('M'); i >= 0; i = upper.indexOf('M', i + 1)) {
+            int end = i + 1;
+            while (end < upper.length() && (Character.isDigit(upper.charAt(end)) || upper.charAt(end) == '.')) {
+                end++;
+            }
+            if (end == i + 1) {
+                continue;
+            }
+            double code = Double.parseDouble(upper.substring(i + 1, end));
+            if (code == 3 || code == 4) {
+                spindleOn = true;
+            } else if (code == 5 || code == 2 || code == 30) {
+                spindleOn = false;
+            }
+        }
+    }
+
+    /**
+     * Adds a block for a move to the planner.
+     * @return false if the move has no feed rate.
+     */
+    private boolean plan(Position start, PointSegment segment, GcodeState state, boolean jog) {
+        double scale = segment.isMetric() ? 1 : MM_PER_INCH;
+        Position end = segment.point();
+
+        Block block = new Block();
+        setAxes(block.start, start, scale);
+        setAxes(block.target, end, scale);
+        block.rapid = segment.isFastTraverse();
+        block.jog = jog;
+
+        double chord = 0;
+        for (int axis = 0; axis < AXES; axis++) {
+            double delta = block.target[axis] - block.start[axis];
+            block.unit[axis] = delta;
+            chord += delta * delta;
+        }
+        chord = Math.sqrt(chord);
+        if (chord == 0 && !segment.isArc()) {
+            return true;
+        }
+        for (int axis = 0; axis < AXES; axis++) {
+            block.unit[axis] = chord > 0 ? block.unit[axis] / chord : 0;
+        }
+
+        block.length = chord;
+        if (segment.isArc()) {
+            PlaneFormatter plane = new PlaneFormatter(segment.getPlaneState());
+            ArcTessellation arc = GcodePreprocessorUtils.tessellateArc(start, end, segment.center(),
+                    segment.isClockwise(), segment.getRadius(), 0, 1, plane);
+            double linear = (plane.linear(end) - plane.linear(start)) * scale;
+            double arcLength = arc.sweep * arc.radius * scale;
+            block.length = Math.sqrt(arcLength * arcLength + linear * linear);
+        }
+
+        double feed = block.rapid ? maxRate : segment.getSpeed() * scale;
+        if (!block.rapid && state != null && state.feedMode != null && feed <= 0) {
+            return false;
+        }
+        block.nominalSpeed = Math.min(feed, maxRate) / 60;
+
+        block.maxJunctionSpeed = 0;
+        if (!planner.isEmpty()) {
+            block.maxJunctionSpeed = junctionSpeed(planner.get(planner.size() - 1), block);
+        }
+        planner.add(block);
+        replan();
+        return true;
+    }
+
+    private static void setAxes(double[] axes, Position p, double scale) {
+        axes[0] = p.x * scale;
+        axes[1] = p.y * scale;
+        axes[2] = p.z * scale;
+        axes[3] = p.a * scale;
+        axes[4] = p.b * scale;
+    }
+
+    /**
+     * The highest speed at the junction of two blocks with the junction
+     * deviation model of GRBL.
+     */
+    private double junctionSpeed(Block previous, Block next) {
+        double cosTheta = 0;
+        for (int axis = 0; axis < AXES; axis++) {
+            cosTheta -= previous.unit[axis] * next.unit[axis];
+        }
+
+        if (cosTheta > 0.999999) {
+            return MINIMUM_JUNCTION_SPEED;
+        }
+        if (cosTheta < -0.999999) {
+            return Double.MAX_VALUE;
+        }
+        double sinThetaHalf = Math.sqrt(0.5 * (1.0 - cosTheta));
+        return Math.sqrt(acceleration * junctionDeviation * sinThetaHalf / (1.0 - sinThetaHalf));
+    }
+
+    private double speedOf(Block block) {
+        int override = block.jog ? 100 : block.rapid ? rapidOverride : feedOverride;
+        return Math.min(maxRate / 60, block.nominalSpeed * override / 100);
+    }
+
+    /**
+     * Recalculates the entry speeds of the queued blocks: the last block ends
+     * at rest, a block can't enter faster than it can brake to the next entry
+     * or than the previous block can accelerate to.
+     */
+    private void replan() {
+        double nextEntry = 0;
+        for (int i = planner.size() - 1; i >= 1; i--) {
+            Block block = planner.get(i);
+            double limit = Math.min(block.maxJunctionSpeed,
+                    Math.min(speedOf(block), speedOf(planner.get(i - 1))));
+            block.entrySpeed = Math.min(limit,
+                    Math.sqrt(nextEntry * nextEntry + 2 * acceleration * block.length));
+            nextEntry = block.entrySpeed;
+        }
+
+        // The first block is running, it starts from the current speed.
+        double entry = speed;
+        for (int i = 1; i < planner.size(); i++) {
+            Block previous = planner.get(i - 1);
+            double remaining = previous.length - previous.travelled;
+            double reachable = Math.sqrt(entry * entry + 2 * acceleration * remaining);
+            Block block = planner.get(i);
+            block.entrySpeed = Math.min(block.entrySpeed, reachable);
+            entry = block.entrySpeed;
+        }
+    }
+
+    /**
+     * Moves along the planned blocks for some time.
+     */
+    private void advance(double seconds) {
+        double time = seconds;
+        while (time > 0 && !planner.isEmpty()) {
+            Block block = planner.get(0);
+            double exit = planner.size() > 1 && !hold ? planner.get(1).entrySpeed : 0;
+            double cruise = hold ? 0 : speedOf(block);
+            double remaining = block.length - block.travelled;
+            double step = Math.min(time, STEP_SECONDS);
+
+            // Brake in time for the exit speed.
+            double target = Math.min(cruise, Math.sqrt(exit * exit + 2 * acceleration * remaining));
+            double next = speed < target
+                    ? Math.min(target, speed + acceleration * step)
+                    : Math.max(target, speed - acceleration * step);
+            double distance = (speed + next) / 2 * step;
+
+            if (distance >= remaining) {
+                double average = (speed + next) / 2;
+                time -= average > 0 ? Math.min(step, remaining / average) : 0;
+                speed = next;
+                System.arraycopy(block.target, 0, machine, 0, AXES);
+                planner.remove(0);
+                continue;
+            }
+
+            if (next == 0 && speed == 0) {
+                // Held.
+                break;
+            }
+            block.travelled += distance;
+            speed = next;
+            time -= step;
+            for (int axis = 0; axis < AXES; axis++) {
+                machine[axis] = block.start[axis]
+                        + (block.target[axis] - block.start[axis]) * block.travelled / block.length;
+            }
+        }
+
+        if (planner.isEmpty()) {
+            speed = 0;
+            hold = false;
+        }
+    }
+
+    private String statusReport() {
+        String state;
+        if (hold) {
+            state = speed > 0 ? "Hold:1" : "Hold:0";
+        } else if (!planner.isEmpty()) {
+            state = planner.get(0).jog ? "Jog" : "Run";
+        } else if (checkMode) {
+            state = "Check";
+        } else {
+            state = "Idle";
+        }
+
+        StringBuilder sb = new StringBuilder(96);
+        sb.append('<').append(state).append("|MPos:");
+        for (int axis = 0; axis < AXES; axis++) {
+            if (axis > 0) {
+                sb.append(',');
+            }
+            sb.append(String.format(Locale.US, "%.3f", machine[axis]));
+        }
+        double spindle = spindleOn ? parser.getCurrentState().spindleSpeed * spindleOverride / 100 : 0;
+        sb.append("|Bf:").append(plannerBlockCount - planner.size()).append(',').append(rxBufferSize - rx.size())
+                .append("|FS:").append(Math.round(speed * 60)).append(',').append(Math.round(spindle))
+                .append("|Ov:").append(feedOverride).append(',').append(rapidOverride).append(',').append(spindleOverride)
+                .append('>');
+        return sb.toString();
+    }
+
+    private String parserState() {
+        GcodeState state = parser.getCurrentState();
+        String motion = state.currentMotionMode == null ? "G0" : state.currentMotionMode.toString();
+        return "[GC:" + motion
+                + " " + state.offset
+                + " " + (state.plane == null ? "G17" : state.plane.code.toString())
+                + " " + (state.isMetric ? "G21" : "G20")
+                + " " + (state.inAbsoluteMode ? "G90" : "G91")
+                + " G94"
+                + " " + (spindleOn ? "M3" : "M5")
+                + " M9 T0 F" + format(state.speed) + " S" + format(state.spindleSpeed) + "]";
+    }
+
+    private void respond(String message) {
+        byte[] bytes = (message + "\r\n").getBytes(StandardCharsets.US_ASCII);
+        // An idle line starts sending now.
+        if (output.isEmpty()) {
+            outputWireTime = Math.max(outputWireTime, now);
+        }
+        output.add(bytes, 0, bytes.length);
+    }
+
+    /**
+     * Hands the bytes which arrived at the host by now to the response
+     * handler.
+     */
+    private void transmit() {
+        int count = 0;
+        while (!output.isEmpty() && (byteNanos == 0 || outputWireTime + byteNanos <= now)) {
+            delivery[count++] = output.poll();
+            outputWireTime += byteNanos;
+            if (count == delivery.length) {
+                responseMessageHandler.handleResponse(delivery, 0, count);
+                count = 0;
+            }
+        }
+        if (count > 0) {
+            responseMessageHandler.handleResponse(delivery, 0, count);
+        }
+    }
+
+    private void initSettings() {
+        settings.put(0, "10");
+        settings.put(1, "25");
+        settings.put(2, "0");
+        settings.put(3, "0");
+        settings.put(4, "0");
+        settings.put(5, "0");
+        settings.put(6, "0");
+        settings.put(10, "3");
+        settings.put(12, "0.002");
+        settings.put(13, "0");
+        settings.put(20, "0");
+        settings.put(21, "0");
+        settings.put(22, "0");
+        settings.put(23, "0");
+        settings.put(24, "25.000");
+        settings.put(25, "500.000");
+        settings.put(26, "250");
+        settings.put(27, "1.000");
+        settings.put(30, "1000");
+        settings.put(31, "0");
+        settings.put(32, "0");
+        for (int axis = 0; axis < AXES; axis++) {
+            settings.put(100 + axis, "250.000");
+            settings.put(130 + axis, "200.000");
+        }
+        setJunctionDeviation(junctionDeviation);
+        setMaxRate(maxRate);
+        setAcceleration(acceleration);
+    }
+
+    private static String format(double value) {
+        return String.format(Locale.US, "%.3f", value);
+    }
+
+    /**
+     * A growable FIFO of bytes.
+     */
+    private static final class ByteQueue {
+        private byte[] buffer;
+        private int head = 0;
+        private int size = 0;
+
+        ByteQueue(int capacity) {
+            buffer = new byte[Math.max(1, capacity)];
+        }
+
+        boolean isEmpty() {
+            return size == 0;
+        }
+
+        int size() {
+            return size;
+        }
+
+        void clear() {
+            head = 0;
+            size = 0;
+        }
+
+        void add(byte b) {
+            if (size == buffer.length) {
+                grow(size + 1);
+            }
+            buffer[(head + size++) % buffer.length] = b;
+        }
+
+        void add(byte[] bytes, int offset, int length) {
+            if (size + length > buffer.length) {
+                grow(size + length);
+            }
+            for (int i = 0; i < length; i++) {
+                buffer[(head + size++) % buffer.length] = bytes[offset + i];
+            }
+        }
+
+        byte poll() {
+            byte b = buffer[head];
+            head = (head + 1) % buffer.length;
+            size--;
+            return b;
+        }
+
+        private void grow(int required) {
+            byte[] grown = new byte[Math.max(required, buffer.length * 2)];
+            for (int i = 0; i < size; i++) {
+                grown[i] = buffer[(head + i) % buffer.length];
+            }
+            buffer = grown;
+            head = 0;
+        }
+    }
+}
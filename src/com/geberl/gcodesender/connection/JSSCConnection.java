@@ -101,6 +101,14 @@ public class JSSCConnection extends AbstractConnection implements SerialPortEven
         this.serialPort.writeString(command);
     }
         
+    /**
+     * Sends a batch of encoded commands to the serial device.
+     */
+    @Override
+    public void sendBytesToComm(byte[] bytes, int length) throws Exception {
+        this.serialPort.writeBytes(length == bytes.length ? bytes : Arrays.copyOf(bytes, length));
+    }
+
     /**
      * Immediately sends a byte, used for real-time commands.
      */
@@ -120,8 +128,7 @@ public class JSSCConnection extends AbstractConnection implements SerialPortEven
                 return;
             }
 
-            String s = new String(buf, 0, buf.length);
-            responseMessageHandler.handleResponse(s);
+            responseMessageHandler.handleResponse(buf, 0, buf.length);
         } catch ( Exception e ) {
             e.printStackTrace();
             System.exit(-1);
@@ -22,6 +22,7 @@ import com.fazecast.jSerialComm.SerialPort;
 import com.fazecast.jSerialComm.SerialPortDataListener;
 import org.apache.commons.lang3.StringUtils;
 
+import java.nio.ByteBuffer;
 import java.util.Arrays;
 import java.util.List;
 import java.util.stream.Collectors;
@@ -33,7 +34,6 @@ import java.util.stream.Collectors;
  */
 public class JSerialCommConnection extends AbstractConnection implements SerialPortDataListener {
 
-    private final byte[] buffer = new byte[1024];
     private SerialPort serialPort;
 
     @Override
@@ -87,6 +87,11 @@ public class JSerialCommConnection extends AbstractConnection implements SerialP
         serialPort.writeBytes(command.getBytes(), command.length());
     }
 
+    @Override
+    public void sendBytesToComm(byte[] bytes, int length) throws Exception {
+        serialPort.writeBytes(bytes, length);
+    }
+
     @Override
     public boolean isOpen() {
         return serialPort.isOpen();
@@ -111,14 +116,17 @@ public class JSerialCommConnection extends AbstractConnection implements SerialP
             return;
         }
 
-        int bytesAvailable = serialPort.bytesAvailable();
-        if (bytesAvailable <= 0) {
-            return;
+        // Read straight into the buffer of the response handler until the
+        // port is drained, more data may arrive while the lines are handled.
+        int bytesAvailable;
+        while ((bytesAvailable = serialPort.bytesAvailable()) > 0) {
+            ByteBuffer target = responseMessageHandler.getReceiveBuffer(bytesAvailable);
+            int bytesRead = serialPort.readBytes(target.array(), bytesAvailable,
+                    target.arrayOffset() + target.position());
+            if (bytesRead <= 0) {
+                return;
+            }
+            responseMessageHandler.handleReceived(bytesRead);
         }
-
-        int bytesRead = serialPort.readBytes(buffer, Math.min(buffer.length, bytesAvailable));
-        String response = new String(buffer, 0, bytesRead);
-
-        responseMessageHandler.handleResponse(response);
     }
 }
@@ -0,0 +1,297 @@
+/*
+    Copyright 2026 Stephan Geberl
+
+    This file is part of WireCutter/Mill GCode - Sender (WGS) (5 Axis-Version).
+    WGS is derived from UGS by Will Winder (2012 - 2018)
+
+    WGS is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    UGS is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with WGS.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.geberl.gcodesender.connection;
+
+import org.apache.commons.lang3.StringUtils;
+
+import java.io.IOException;
+import java.net.BindException;
+import java.net.ConnectException;
+import java.net.InetSocketAddress;
+import java.net.NoRouteToHostException;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A TCP connection using a non-blocking SocketChannel. Nagle's algorithm is
+ * turned off so every batch of commands leaves right away, which matters for
+ * controllers behind a Wi-Fi bridge where each acknowledgement is a round
+ * trip.
+ *
+ * Writes are copied to direct buffers and written by the calling thread. If
+ * the socket can't take them all, the rest is queued and written by the
+ * selector thread, which then writes all queued batches with one gathering
+ * write. The selector thread also reads the responses.
+ *
+ * Example URI: tcpnio://examplehost.local:9001
+ */
+public class NIOTCPConnection extends AbstractConnection {
+    private static final Logger logger = Logger.getLogger(NIOTCPConnection.class.getName());
+
+    private static final int READ_BUFFER_SIZE = 4096;
+    private static final int WRITE_BUFFER_SIZE = 1024;
+
+    // Drained write buffers kept for reuse, direct buffers are expensive to allocate.
+    private static final int MAX_FREE_BUFFERS = 8;
+
+    private String host;
+    private int port;
+
+    private SocketChannel channel;
+    private Selector selector;
+    private SelectionKey key;
+    private Thread selectorThread;
+
+    private final ByteBuffer readBuffer = ByteBuffer.allocateDirect(READ_BUFFER_SIZE);
+
+    // Batches waiting for room in the socket, guarded by writeLock.
+    private final Object writeLock = new Object();
+    private final ArrayDeque<ByteBuffer> pendingWrites = new ArrayDeque<>();
+    private final ArrayDeque<ByteBuffer> freeBuffers = new ArrayDeque<>();
+    private ByteBuffer[] gatherArray = new ByteBuffer[4];
+
+    @Override
+    public void setUri(String uri) {
+        try {
+            host = StringUtils.substringBetween(uri, ConnectionDriver.TCP_NIO.getProtocol(), ":");
+            port = Integer.valueOf(StringUtils.substringAfterLast(uri, ":"));
+        } catch (Exception e) {
+            throw new ConnectionException("Couldn't parse connection string " + uri, e);
+        }
+
+        if (StringUtils.isEmpty(host)) {
+            throw new ConnectionException("Empty host in connection string.");
+        }
+        if ((port < 1) || (port > 65535)) {
+            throw new ConnectionException("Please ensure port is a port number between 1 and 65535.");
+        }
+    }
+
+    @Override
+    public boolean openPort() throws Exception {
+        try {
+            channel = SocketChannel.open();
+            channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            channel.connect(new InetSocketAddress(host, port));
+        } catch (BindException e) {
+            closePort();
+            throw new ConnectionException("Could not bind a local port.", e);
+        } catch (NoRouteToHostException e) {
+            closePort();
+            throw new ConnectionException("No route to host. The remote host may not be running, blocked by a firewall, or disconnected.", e);
+        } catch (ConnectException e) {
+            closePort();
+            throw new ConnectionException("The port is unreachable on the remote host. The server may not be running, or blocked by a firewall.", e);
+        }
+
+        channel.configureBlocking(false);
+        selector = Selector.open();
+        key = channel.register(selector, SelectionKey.OP_READ);
+
+        selectorThread = new Thread(this::selectorLoop, "TCPSelector");
+        selectorThread.setDaemon(true);
+        selectorThread.start();
+
+        return channel.isConnected();
+    }
+
+    @Override
+    public void closePort() throws Exception {
+        Thread thread = selectorThread;
+        selectorThread = null;
+        if (thread != null) {
+            thread.interrupt();
+        }
+
+        // Under writeLock so a sender never sees a half closed connection.
+        synchronized (writeLock) {
+            try {
+                if (selector != null) {
+                    selector.close();
+                }
+                if (channel != null) {
+                    channel.close();
+                }
+            } finally {
+                selector = null;
+                channel = null;
+                key = null;
+                pendingWrites.clear();
+            }
+        }
+    }
+
+    @Override
+    public boolean isOpen() {
+        SocketChannel c = channel;
+        return c != null && c.isOpen();
+    }
+
+    /**
+     * Sends a command to remote host.
+     * @param command Command to be sent to remote host.
+     */
+    @Override
+    public void sendStringToComm(String command) throws Exception {
+        byte[] bytes = command.getBytes();
+        sendBytesToComm(bytes, bytes.length);
+    }
+
+    /**
+     * Sends a batch of encoded commands to remote host.
+     */
+    @Override
+    public void sendBytesToComm(byte[] bytes, int length) throws Exception {
+        if (!isOpen()) {
+            throw new ConnectionException("The connection to " + host + ":" + port + " is closed.");
+        }
+        try {
+            synchronized (writeLock) {
+                ByteBuffer buffer = takeBuffer(length);
+                buffer.put(bytes, 0, length).flip();
+                pendingWrites.add(buffer);
+                write();
+            }
+        } catch (IOException e) {
+            closePort(); // very likely we got disconnected, attempt to disconnect gracefully
+            throw e;
+        }
+    }
+
+    /**
+     * Immediately sends a byte, used for real-time commands.
+     */
+    @Override
+    public void sendByteImmediately(byte b) throws Exception {
+        sendBytesToComm(new byte[]{b}, 1);
+    }
+
+    /**
+     * Finding and enumerating all possible hosts on a network does not seem
+     * like a good idea, so there are no port names.
+     */
+    @Override
+    public List<String> getPortNames() {
+        return new ArrayList<>();
+    }
+
+    /**
+     * Writes as much of the pending batches as the socket takes, with a single
+     * gathering write. The selector thread is asked to write the rest when
+     * there is room. Called holding writeLock.
+     *
+     * @throws ClosedChannelException if the connection was closed meanwhile.
+     */
+    private void write() throws IOException {
+        if (channel == null || !channel.isOpen() || key == null || !key.isValid()) {
+            throw new ClosedChannelException();
+        }
+
+        int count = pendingWrites.size();
+        if (count == 0) {
+            return;
+        }
+
+        if (count == 1) {
+            channel.write(pendingWrites.peek());
+        } else {
+            if (gatherArray.length < count) {
+                gatherArray = new ByteBuffer[Math.max(count, gatherArray.length * 2)];
+            }
+            pendingWrites.toArray(gatherArray);
+            channel.write(gatherArray, 0, count);
+        }
+
+        while (!pendingWrites.isEmpty() && !pendingWrites.peek().hasRemaining()) {
+            releaseBuffer(pendingWrites.poll());
+        }
+
+        int ops = pendingWrites.isEmpty() ? SelectionKey.OP_READ : SelectionKey.OP_READ | SelectionKey.OP_WRITE;
+        if (key.interestOps() != ops) {
+            key.interestOps(ops);
+            selector.wakeup();
+        }
+    }
+
+    private ByteBuffer takeBuffer(int length) {
+        ByteBuffer buffer = freeBuffers.poll();
+        if (buffer == null || buffer.capacity() < length) {
+            buffer = ByteBuffer.allocateDirect(Math.max(length, WRITE_BUFFER_SIZE));
+        }
+        buffer.clear();
+        return buffer;
+    }
+
+    private void releaseBuffer(ByteBuffer buffer) {
+        if (freeBuffers.size() < MAX_FREE_BUFFERS) {
+            freeBuffers.add(buffer);
+        }
+    }
+
+    /**
+     * Thread to accept data from remote host and write queued batches.
+     */
+    private void selectorLoop() {
+        Selector s = selector;
+        SocketChannel c = channel;
+        SelectionKey k = key;
+        try {
+            while (!Thread.currentThread().isInterrupted() && c.isOpen()) {
+                s.select();
+
+                if (k.isValid() && k.isWritable()) {
+                    synchronized (writeLock) {
+                        write();
+                    }
+                }
+
+                if (k.isValid() && k.isReadable()) {
+                    int read;
+                    while ((read = c.read(readBuffer)) > 0) {
+                        readBuffer.flip();
+                        responseMessageHandler.handleResponse(readBuffer);
+                        readBuffer.clear();
+                    }
+                    if (read < 0) {
+                        logger.log(Level.INFO, "The remote host closed the connection.");
+                        closePort();
+                        return;
+                    }
+                }
+                s.selectedKeys().clear();
+            }
+        } catch (ClosedSelectorException | ClosedChannelException e) {
+            // The connection was closed.
+        } catch (Exception e) {
+            // Terminate the thread if disconnected.
+            logger.log(Level.WARNING, "Error in TCP connection to " + host + ":" + port, e);
+        }
+    }
+}
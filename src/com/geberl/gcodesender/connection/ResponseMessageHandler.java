@@ -18,6 +18,9 @@
  */
 package com.geberl.gcodesender.connection;
 
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
 import java.util.HashSet;
 import java.util.Set;
 
@@ -26,19 +29,45 @@ import java.util.Set;
  * until we have a complete line. It will then attempt to dispatch that
  * data to a communicator.
  *
+ * The data is framed as bytes: received bytes are appended to a reusable
+ * buffer and only the new bytes are scanned for line terminators. A line ends
+ * with "\n" or "\r\n", like the "\r?\n" pattern used before. Optionally
+ * the "ok" and "error:<code>" acknowledgements are dispatched as shared
+ * strings instead of decoding them, other lines are decoded as ASCII.
+ *
+ * The handler isn't thread safe, it is fed by the reading thread of a
+ * connection.
+ *
  * @author wwinder
  * @author Joacim Breiler
  */
 public class ResponseMessageHandler {
+    private static final String OK = "ok";
+    private static final byte[] ERROR_PREFIX = "error:".getBytes(StandardCharsets.US_ASCII);
+
+    // Acknowledgements for the error codes, created when first received.
+    private final String[] errors = new String[256];
 
-    private final StringBuilder inputBuffer;
+    private byte[] inputBuffer = new byte[256];
+    // A view of inputBuffer for connections reading into it.
+    private ByteBuffer receiveBuffer = ByteBuffer.wrap(inputBuffer);
+    // Start of the incomplete line and end of the received data.
+    private int lineStart = 0;
+    private int inputEnd = 0;
+
+    private boolean acknowledgementFastPath = true;
     private Set<IConnectionListener> listeners = new HashSet<>();
 
     public ResponseMessageHandler() {
-        inputBuffer = new StringBuilder();
     }
 
-
+    /**
+     * Toggles if "ok" and "error:<code>" lines are recognized without decoding
+     * them, the listeners receive equal strings either way.
+     */
+    public void setAcknowledgementFastPath(boolean acknowledgementFastPath) {
+        this.acknowledgementFastPath = acknowledgementFastPath;
+    }
 
     /**
      * Appends the response data to a buffer, then splits out response rows and sends them
@@ -47,37 +76,140 @@ public class ResponseMessageHandler {
      * @param response a complete or part of a response message
      */
     public void handleResponse(String response) {
-        inputBuffer.append(response);
+        byte[] bytes = response.getBytes(StandardCharsets.US_ASCII);
+        handleResponse(bytes, 0, bytes.length);
+    }
 
-        // Only continue if there is a line terminator and split out command(response).
-        if (!inputBuffer.toString().contains("\n")) {
-            return;
-        }
+    /**
+     * Appends received bytes to the buffer and sends every completed line to
+     * the listeners. The bytes are copied, the caller can reuse its array.
+     *
+     * @param data   a complete or part of a response message
+     * @param offset index of the first received byte in data
+     * @param length number of received bytes
+     */
+    public void handleResponse(byte[] data, int offset, int length) {
+        ensureCapacity(length);
+        System.arraycopy(data, offset, inputBuffer, inputEnd, length);
+        handleReceived(length);
+    }
 
-        // Split with the -1 option will give an empty string at
-        // the end if there is a terminator there as well.
-        String[] messages = inputBuffer.toString().split("\\r?\\n", -1);
-        for (int i = 0; i < messages.length; i++) {
-            // Make sure this isn't the last command.
-            if ((i + 1) < messages.length) {
+    /**
+     * Appends the remaining bytes of a buffer, see
+     * {@link #handleResponse(byte[], int, int)}. The position of data is
+     * moved to its limit.
+     */
+    public void handleResponse(ByteBuffer data) {
+        int length = data.remaining();
+        ensureCapacity(length);
+        data.get(inputBuffer, inputEnd, length);
+        handleReceived(length);
+    }
 
-                notifyListeners(messages[i]);
+    /**
+     * Returns the free part of the receive buffer, with room for at least
+     * length bytes, so a connection can read into it without a copy. The
+     * position of the returned buffer is where the next byte goes, the array
+     * is only valid until the next call to this handler. Call
+     * {@link #handleReceived(int)} with the number of bytes written.
+     */
+    public ByteBuffer getReceiveBuffer(int length) {
+        ensureCapacity(length);
+        receiveBuffer.limit(inputBuffer.length).position(inputEnd);
+        return receiveBuffer;
+    }
 
-                // Append last command to input buffer because it didn't have a terminator.
-            } else {
-                inputBuffer.setLength(0);
-                inputBuffer.append(messages[i]);
+    /**
+     * Frames bytes written to the buffer returned by
+     * {@link #getReceiveBuffer(int)} and sends every completed line to the
+     * listeners.
+     *
+     * @param length number of bytes written.
+     */
+    public void handleReceived(int length) {
+        int scanStart = inputEnd;
+        inputEnd += length;
+
+        // Bytes before scanStart belong to a line without a terminator.
+        for (int i = scanStart; i < inputEnd; i++) {
+            if (inputBuffer[i] == '\n') {
+                int lineEnd = i;
+                if (lineEnd > lineStart && inputBuffer[lineEnd - 1] == '\r') {
+                    lineEnd--;
+                }
+                notifyListeners(toMessage(inputBuffer, lineStart, lineEnd - lineStart));
+                lineStart = i + 1;
             }
         }
+
+        // Keep the incomplete line at the start of the buffer.
+        if (lineStart == inputEnd) {
+            lineStart = 0;
+            inputEnd = 0;
+        } else if (lineStart > 0) {
+            System.arraycopy(inputBuffer, lineStart, inputBuffer, 0, inputEnd - lineStart);
+            inputEnd -= lineStart;
+            lineStart = 0;
+        }
     }
 
     public void notifyListeners(String message) {
-        listeners.forEach(listener -> {
+        for (IConnectionListener listener : listeners) {
             listener.handleResponseMessage(message);
-        });
+        }
     }
 
     public void addListener(IConnectionListener connectionListener) {
         listeners.add(connectionListener);
     }
+
+    private void ensureCapacity(int length) {
+        if (inputEnd + length > inputBuffer.length) {
+            inputBuffer = Arrays.copyOf(inputBuffer, Math.max(inputBuffer.length * 2, inputEnd + length));
+            receiveBuffer = ByteBuffer.wrap(inputBuffer);
+        }
+    }
+
+    private String toMessage(byte[] buf, int offset, int length) {
+        if (acknowledgementFastPath) {
+            if (length == 2 && buf[offset] == 'o' && buf[offset + 1] == 'k') {
+                return OK;
+            }
+            int code = errorCode(buf, offset, length);
+            if (code >= 0) {
+                if (errors[code] == null) {
+                    errors[code] = "error:" + code;
+                }
+                return errors[code];
+            }
+        }
+        return new String(buf, offset, length, StandardCharsets.US_ASCII);
+    }
+
+    // The code of an "error:<code>" line without leading zeros, or -1.
+    private int errorCode(byte[] buf, int offset, int length) {
+        int digits = length - ERROR_PREFIX.length;
+        if (digits < 1 || digits > 3) {
+            return -1;
+        }
+        for (int i = 0; i < ERROR_PREFIX.length; i++) {
+            if (buf[offset + i] != ERROR_PREFIX[i]) {
+                return -1;
+            }
+        }
+
+        int code = 0;
+        for (int i = offset + ERROR_PREFIX.length; i < offset + length; i++) {
+            byte b = buf[i];
+            if (b < '0' || b > '9') {
+                return -1;
+            }
+            code = code * 10 + (b - '0');
+        }
+        // "error:07" must stay as it is.
+        if (code >= errors.length || (digits > 1 && buf[offset + ERROR_PREFIX.length] == '0')) {
+            return -1;
+        }
+        return code;
+    }
 }
@@ -132,6 +132,20 @@ public class TCPConnection extends AbstractConnection implements Runnable, Conne
 		}
 	}
 
+	/**
+	 * Sends a batch of encoded commands to remote host.
+	 */
+	@Override
+	public void sendBytesToComm(byte[] bytes, int length) throws Exception {
+		try {
+			bufOut.write(bytes, 0, length);
+			bufOut.flush();
+		} catch (IOException e) {
+			closePort(); // very likely we got disconnected, attempt to disconnect gracefully
+			throw e;
+		}
+	}
+
 	/**
 	 * Immediately sends a byte, used for real-time commands.
 	 */
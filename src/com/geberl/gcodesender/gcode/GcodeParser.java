@@ -28,16 +28,19 @@
  */
 package com.geberl.gcodesender.gcode;
 
+import com.geberl.gcodesender.gcode.processors.BufferingCommandProcessor;
 import com.geberl.gcodesender.gcode.processors.CommandProcessor;
+import com.geberl.gcodesender.gcode.processors.CommandProcessorAdapter;
 import com.geberl.gcodesender.gcode.processors.Stats;
+import com.geberl.gcodesender.gcode.processors.StructuredCommandProcessor;
 import com.geberl.gcodesender.gcode.util.Code;
 import com.geberl.gcodesender.gcode.util.GcodeParserException;
+import com.geberl.gcodesender.gcode.util.GcodeWords;
 import com.geberl.gcodesender.gcode.util.Plane;
 import com.geberl.gcodesender.gcode.util.PlaneFormatter;
 import com.geberl.gcodesender.model.Position;
 import com.geberl.gcodesender.model.UnitUtils;
 import com.geberl.gcodesender.types.PointSegment;
-import com.google.common.collect.Iterables;
 
 import org.apache.commons.lang3.StringUtils;
 
@@ -46,7 +49,6 @@ import static com.geberl.gcodesender.gcode.util.Code.ModalGroup.Motion;
 
 import java.util.*;
 import java.util.logging.Logger;
-import java.util.stream.Collectors;
 
 /**
  *
@@ -60,8 +62,17 @@ public class GcodeParser implements IGcodeParser {
 
     private final ArrayList<CommandProcessor> processors = new ArrayList<>();
 
+    // The processors as they are run by preprocessCommand.
+    private final ArrayList<StructuredCommandProcessor> stages = new ArrayList<>();
+
     private Stats statsProcessor;
 
+    // Word table reused by processCommand, one per thread.
+    private static final ThreadLocal<GcodeWords> WORDS = ThreadLocal.withInitial(GcodeWords::new);
+
+    // State of each processor while preprocessing a command.
+    private GcodeState[] stageStates = new GcodeState[0];
+
     /**
      * An intermediate object with all metadata for a given point.
      */
@@ -109,6 +120,7 @@ public class GcodeParser implements IGcodeParser {
     @Override
     public void addCommandProcessor(CommandProcessor p) {
         this.processors.add(p);
+        this.stages.add(CommandProcessorAdapter.adapt(p));
     }
 
     /**
@@ -117,6 +129,7 @@ public class GcodeParser implements IGcodeParser {
     @Override
     public void resetCommandProcessors() {
         this.processors.clear();
+        this.stages.clear();
         this.statsProcessor = new Stats();
     }
 
@@ -165,6 +178,20 @@ public class GcodeParser implements IGcodeParser {
         return results;
     }
     
+    /**
+     * Updates the parser state with a command like addCommand, without
+     * creating the GcodeMeta results. The state returned by getCurrentState is
+     * modified in place, take a snapshot of it to keep an earlier state.
+     */
+    public void updateState(String command) throws GcodeParserException {
+        statsProcessor.processCommand(command, state);
+        int numStates = applyCommand(command, ++this.state.commandNumber, state);
+        // Stats are processed for every state the command passes through.
+        for (int i = 0; i < numStates; i++) {
+            statsProcessor.processCommand(command, state);
+        }
+    }
+
     /**
      * Gets the point at the end of the list.
      */
@@ -196,61 +223,148 @@ public class GcodeParser implements IGcodeParser {
     public static List<GcodeMeta> processCommand(String command, int line, final GcodeState inputState,
             boolean includeNonMotionStates)
             throws GcodeParserException {
-        List<String> args = GcodePreprocessorUtils.splitCommand(command);
+        // The words are looked up in a reused table instead of a list of strings.
+        return processCommand(command, WORDS.get().parse(command), line, inputState, includeNonMotionStates);
+    }
+
+    /**
+     * Process a parsed command given an initial state, see
+     * {@link #processCommand(String, int, GcodeState, boolean)}.
+     */
+    public static List<GcodeMeta> processCommand(ParsedCommand command, int line, final GcodeState inputState,
+            boolean includeNonMotionStates)
+            throws GcodeParserException {
+        return processCommand(command.getCommand(), command.getWords(), line, inputState, includeNonMotionStates);
+    }
+
+    private static List<GcodeMeta> processCommand(String command, GcodeWords args, int line,
+            final GcodeState inputState, boolean includeNonMotionStates)
+            throws GcodeParserException {
         if (args.isEmpty()) return null;
 
         // Initialize with original state
         GcodeState state = inputState.copy();
 
+        List<GcodeMeta> results = new ArrayList<>();
+        applyWords(command, args, line, state, results);
+
+        // Return updated state / command.
+        if (results.isEmpty() && includeNonMotionStates) {
+          GcodeMeta meta = new GcodeMeta();
+          meta.state = state;
+          meta.command = command;
+          meta.code = state.currentMotionMode;
+          return Collections.singletonList(meta);
+        }
+        
+        return results;
+    }
+
+    /**
+     * Applies a command to a state in place. Unlike processCommand no GcodeMeta,
+     * PointSegment or state copies are created, which makes this the cheaper
+     * choice when only the resulting state is needed.
+     *
+     * The current point of the state is modified as well, so it must not be
+     * shared with anything else, see {@link GcodeState#snapshot()}. If the
+     * command can't be parsed the state may be partially updated.
+     *
+     * @return the number of states the command passes through, the size of
+     *         the processCommand result with includeNonMotionStates set.
+     */
+    public static int applyCommand(String command, int line, GcodeState state)
+            throws GcodeParserException {
+        return applyCommand(command, WORDS.get().parse(command), line, state);
+    }
+
+    /**
+     * Applies a parsed command to a state in place, see
+     * {@link #applyCommand(String, int, GcodeState)}.
+     */
+    public static int applyCommand(ParsedCommand command, int line, GcodeState state)
+            throws GcodeParserException {
+        return applyCommand(command.getCommand(), command.getWords(), line, state);
+    }
+
+    /**
+     * Applies a command which has already been split into words, the words can
+     * be applied to any number of states.
+     */
+    private static int applyCommand(String command, GcodeWords args, int line, GcodeState state)
+            throws GcodeParserException {
+        if (args.isEmpty()) return 0;
+
+        return Math.max(1, applyWords(command, args, line, state, null));
+    }
+
+    /**
+     * Applies the words of a command to the state, the GcodeMeta of each code
+     * is added to results unless it is null.
+     * @return the number of codes applied.
+     */
+    private static int applyWords(String command, GcodeWords args, int line, GcodeState state,
+            List<GcodeMeta> results) throws GcodeParserException {
         state.commandNumber = line;
         
         // handle M codes.
         //codes = GcodePreprocessorUtils.parseCodes(args, 'M');
         //handleMCode(for each codes);
 
-        List<String> fCodes = GcodePreprocessorUtils.parseCodes(args, 'F');
-        if (!fCodes.isEmpty()) {
-            try {
-                state.speed = Double.parseDouble(Iterables.getOnlyElement(fCodes));
-            } catch (IllegalArgumentException e) {
-                throw new GcodeParserException("Multiple F-codes on one line.");
-            }
+        if (args.count('F') > 1) {
+            throw new GcodeParserException("Multiple F-codes on one line.");
+        } else if (args.has('F')) {
+            state.speed = parseWord(args, 'F');
         }
 
-        List<String> sCodes = GcodePreprocessorUtils.parseCodes(args, 'S');
-        if (!sCodes.isEmpty()) {
-            try {
-                state.spindleSpeed = Double.parseDouble(Iterables.getOnlyElement(sCodes));
-            } catch (IllegalArgumentException e) {
-                throw new GcodeParserException("Multiple S-codes on one line.");
-            }
+        if (args.count('S') > 1) {
+            throw new GcodeParserException("Multiple S-codes on one line.");
+        } else if (args.has('S')) {
+            state.spindleSpeed = parseWord(args, 'S');
+        }
+
+        if (args.getSpindleCode() != null) {
+            state.spindleMode = args.getSpindleCode();
         }
         
-        // Gather G codes.
-        Set<Code> gCodes = GcodePreprocessorUtils.getGCodes(args);
-        
-        boolean hasAxisWords = GcodePreprocessorUtils.hasAxisWords(args);
+        boolean hasAxisWords = args.hasAxisWords();
 
         // Error to mix group 1 (Motion) and certain group 0 (NonModal) codes (G10, G28, G30, G92)
-        Collection<Code> motionCodes = gCodes.stream()
-                .filter(c -> c.consumesMotion())
-                .collect(Collectors.toList());
+        int numMotionCodes = 0;
+        for (int i = 0; i < args.getNumGCodes(); i++) {
+            if (args.getGCode(i).consumesMotion()) {
+                numMotionCodes++;
+            }
+        }
 
         // 1 motion code per line.
-        if (motionCodes.size() > 1) {
+        if (numMotionCodes > 1) {
+            List<Code> motionCodes = new ArrayList<>();
+            for (int i = 0; i < args.getNumGCodes(); i++) {
+                if (args.getGCode(i).consumesMotion()) {
+                    motionCodes.add(args.getGCode(i));
+                }
+            }
             throw new GcodeParserException("Multiple codes requiring axis words on one line: " + StringUtils.join(motionCodes, ", "));
         }
 
-        // If there are axis words and nothing to use them, add the currentMotionMode.
-        if (hasAxisWords && motionCodes.isEmpty() && state.currentMotionMode != null) {
-            gCodes.add(state.currentMotionMode);
+        // If there are axis words and nothing to use them, apply the currentMotionMode
+        // after the codes of the line. The words aren't modified, so they can be
+        // applied to another state as well.
+        Code modalMotion = null;
+        if (hasAxisWords && numMotionCodes == 0 && state.currentMotionMode != null) {
+            modalMotion = state.currentMotionMode;
         }
 
         // Apply each code to the state.
-        List<GcodeMeta> results = new ArrayList<>();
-        for (Code i : gCodes) {
+        int numApplied = 0;
+        int numCodes = args.getNumGCodes();
+        for (int c = 0; c < numCodes || (c == numCodes && modalMotion != null); c++) {
+            Code i = c < numCodes ? args.getGCode(c) : modalMotion;
             if (i == UNKNOWN) {
                 logger.warning("An unknown gcode command was detected in: " + command);
+            } else if (results == null) {
+                applyGCode(i, args, state);
+                numApplied++;
             } else {
                 GcodeMeta meta = handleGCode(i, args, line, state, hasAxisWords);
                 meta.command = command;
@@ -259,19 +373,19 @@ public class GcodeParser implements IGcodeParser {
                     meta.point.setSpeed(state.speed);
                 }
                 results.add(meta);
+                numApplied++;
             }
         }
+        return numApplied;
+    }
 
-        // Return updated state / command.
-        if (results.isEmpty() && includeNonMotionStates) {
-          GcodeMeta meta = new GcodeMeta();
-          meta.state = state;
-          meta.command = command;
-          meta.code = state.currentMotionMode;
-          return Collections.singletonList(meta);
+    // A malformed F or S number used to fail parsing with the same message.
+    private static double parseWord(GcodeWords args, char letter) throws GcodeParserException {
+        double value = args.get(letter);
+        if (Double.isNaN(value)) {
+            throw new GcodeParserException("Multiple " + letter + "-codes on one line.");
         }
-        
-        return results;
+        return value;
     }
 
     private static PointSegment addProbePointSegment(Position nextPoint, boolean fastTraverse, int line, GcodeState state) {
@@ -311,7 +425,7 @@ public class GcodeParser implements IGcodeParser {
     /**
      * Create a PointSegment representing the arc command.
      */
-    private static PointSegment addArcPointSegment(Position nextPoint, boolean clockwise, List<String> args, int line, GcodeState state) {
+    private static PointSegment addArcPointSegment(Position nextPoint, boolean clockwise, GcodeWords args, int line, GcodeState state) {
         if (nextPoint == null) {
             return null;
         }
@@ -323,7 +437,7 @@ public class GcodeParser implements IGcodeParser {
                 GcodePreprocessorUtils.updateCenterWithCommand(
                         args, state.currentPoint, nextPoint, state.inAbsoluteIJKMode, clockwise, plane);
 
-        double radius = GcodePreprocessorUtils.parseCoord(args, 'R');
+        double radius = args.get('R');
 
         // Calculate radius if necessary, according to the current G17/18/19 Plane
         if (Double.isNaN(radius)) {
@@ -350,7 +464,7 @@ public class GcodeParser implements IGcodeParser {
      * 
      * A copy of the state object should go in the resulting GcodeMeta object.
      */
-    private static GcodeMeta handleGCode(final Code code, List<String> args, int line, GcodeState state, boolean hasAxisWords)
+    private static GcodeMeta handleGCode(final Code code, GcodeWords args, int line, GcodeState state, boolean hasAxisWords)
             throws GcodeParserException {
         GcodeMeta meta = new GcodeMeta();
 
@@ -390,6 +504,27 @@ public class GcodeParser implements IGcodeParser {
                 meta.point = addArcPointSegment(nextPoint, false, args, line, state);
                 break;
 
+            // Probe: http://linuxcnc.org/docs/html/gcode/g-code.html#gcode:g38
+            case G38_2: // probe toward workpiece, stop on contact, signal error if failure
+            case G38_3: // probe toward workpiece, stop on contact
+            case G38_4: // probe away from workpiece, stop on loss of contact, signal error if failure
+            case G38_5: // probe away from workpiece, stop on loss of contact
+                meta.point = addProbePointSegment(nextPoint, true, line, state);
+                break;
+
+            default:
+                break;
+        }
+        updateModalState(code, state);
+        meta.state = state.copy();
+        return meta;
+    }
+
+    /**
+     * Applies a code to the state without moving the current point.
+     */
+    private static void updateModalState(final Code code, GcodeState state) {
+        switch (code) {
             case G17:
             case G18:
             case G19:
@@ -412,14 +547,6 @@ public class GcodeParser implements IGcodeParser {
                 state.currentPoint = state.currentPoint.getPositionIn(UnitUtils.Units.MM);
                 break;
 
-            // Probe: http://linuxcnc.org/docs/html/gcode/g-code.html#gcode:g38
-            case G38_2: // probe toward workpiece, stop on contact, signal error if failure
-            case G38_3: // probe toward workpiece, stop on contact
-            case G38_4: // probe away from workpiece, stop on loss of contact, signal error if failure
-            case G38_5: // probe away from workpiece, stop on loss of contact
-                meta.point = addProbePointSegment(nextPoint, true, line, state);
-                break;
-
             // These are not used in the visualizer.
             case G54:
             case G55:
@@ -462,14 +589,76 @@ public class GcodeParser implements IGcodeParser {
         if (code.getType() == Motion) {
             state.currentMotionMode = code;
         }
-        meta.state = state.copy();
-        return meta;
+    }
+
+    /**
+     * In place version of handleGCode, the current point of the state is
+     * moved instead of creating a point segment.
+     */
+    private static void applyGCode(final Code code, GcodeWords args, GcodeState state)
+            throws GcodeParserException {
+        if (code.consumesMotion()) {
+            double x = args.get('X');
+            double y = args.get('Y');
+            double z = args.get('Z');
+            double a = args.get('A');
+            double b = args.get('B');
+
+            if (Double.isNaN(x) && Double.isNaN(y) && Double.isNaN(z) && Double.isNaN(a) && Double.isNaN(b)) {
+                if (!code.motionOptional()) {
+                    throw new GcodeParserException(
+                            "Axis words missing for motion command: " + code);
+                }
+            } else if (createsPointSegment(code)) {
+                Position p = state.currentPoint;
+                if (state.inAbsoluteMode) {
+                    if (!Double.isNaN(x)) p.x = x;
+                    if (!Double.isNaN(y)) p.y = y;
+                    if (!Double.isNaN(z)) p.z = z;
+                    if (!Double.isNaN(a)) p.a = a;
+                    if (!Double.isNaN(b)) p.b = b;
+                } else {
+                    if (!Double.isNaN(x)) p.x += x;
+                    if (!Double.isNaN(y)) p.y += y;
+                    if (!Double.isNaN(z)) p.z += z;
+                    if (!Double.isNaN(a)) p.a += a;
+                    if (!Double.isNaN(b)) p.b += b;
+                }
+            }
+        }
+        updateModalState(code, state);
+    }
+
+    /**
+     * @return true for the codes handleGCode creates a point segment for.
+     */
+    private static boolean createsPointSegment(final Code code) {
+        switch (code) {
+            case G0:
+            case G1:
+            case G2:
+            case G3:
+            case G38_2:
+            case G38_3:
+            case G38_4:
+            case G38_5:
+                return true;
+            default:
+                return false;
+        }
     }
 
     /**
      * Applies all command processors to a given command and returns the
      * resulting GCode. Does not change the parser state.
      * 
+     * The processors are run as a pipeline in a single pass: every line a
+     * processor returns is passed on to the next processor right away as a
+     * {@link ParsedCommand}. Each
+     * processor has its own state, which starts at initialState and follows
+     * the lines that processor returned, so the result is the same as running
+     * the processors one after the other over the whole list.
+     * 
      * TODO: Rather than have a separate 'preprocessCommand' which needs to be
      * followed up with calls to addCommand, it would be great to have addCommand
      * also do the preprocessing. This is challenging because they have different
@@ -478,53 +667,79 @@ public class GcodeParser implements IGcodeParser {
      * This is also needed for some very particular processing in GUIBackend which
      * gathers comments as a separate step outside the GcodeParser.
      * 
-     * TODO 2: Move this processing logic into another class, or GcodeParserUtils along with testState.
+     * TODO 2: Move this processing logic into another class, or GcodeParserUtils.
      */
     @Override
     public List<String> preprocessCommand(String command, final GcodeState initialState) throws GcodeParserException {
         List<String> ret = new ArrayList<>();
-        ret.add(command);
-        GcodeState tempState = null;
-        for (CommandProcessor p : processors) {
-            // Reset point segments after each pass. The final pass is what we will return.
-            tempState = initialState.copy();
-            // Process each command in the list and add results to the end.
-            // Don't re-process the results with the same preprocessor.
-            for (int i = ret.size(); i > 0; i--) {
-                // The arc expander changes the lastGcodeCommand which causes the following to fail:
-                // G2 Y-0.7 J-14.7
-                // Y28.7 J14.7 (this line treated as a G1)
-                tempState.currentMotionMode = initialState.currentMotionMode;
-                List<String> intermediate = p.processCommand(ret.remove(0), tempState);
-
-                // process results to update the state and collect PointSegments
-                for(String c : intermediate) {
-                    tempState = testState(c, tempState);
-                }
-
-                ret.addAll(intermediate);
-            }
+        if (stages.isEmpty()) {
+            ret.add(command);
+            return ret;
         }
 
+        resetStageStates(initialState);
+        preprocessCommand(new ParsedCommand(command), 0, initialState, ret);
         return ret;
     }
 
     /**
-     * Helper to statically process the next step in a program without modifying the parser.
+     * Returns the commands held back by buffering processors, see
+     * {@link BufferingCommandProcessor}. The commands of a processor are run
+     * through the processors after it. Call this at the end of a program.
      */
-    static private GcodeState testState(String command, GcodeState state) throws GcodeParserException {
-        GcodeState ret = state;
-
-        // Add command get meta doesn't update the state, so we need to do that manually.
-        Collection<GcodeMeta> metaObjects = processCommand(command, 0, state);
-        if (metaObjects != null) {
-            for (GcodeMeta c : metaObjects) {
-                if (c.state != null) {
-                    ret = c.state;
+    @Override
+    public List<String> flushCommandProcessors(final GcodeState initialState) throws GcodeParserException {
+        List<String> ret = new ArrayList<>();
+        resetStageStates(initialState);
+        for (int stage = 0; stage < stages.size(); stage++) {
+            if (stages.get(stage) instanceof BufferingCommandProcessor) {
+                GcodeState tempState = stageStates[stage];
+                for (ParsedCommand c : ((BufferingCommandProcessor) stages.get(stage)).flush(tempState)) {
+                    applyCommand(c, 0, tempState);
+                    preprocessCommand(c, stage + 1, initialState, ret);
                 }
             }
         }
-
         return ret;
     }
+
+    // Reset point segments for each processor.
+    private void resetStageStates(final GcodeState initialState) {
+        if (stageStates.length != stages.size()) {
+            stageStates = new GcodeState[stages.size()];
+        }
+        for (int i = 0; i < stageStates.length; i++) {
+            if (stageStates[i] == null) {
+                stageStates[i] = initialState.copy();
+            } else {
+                stageStates[i].set(initialState);
+            }
+        }
+    }
+
+    /**
+     * Runs a command through the processors starting at stage and adds the
+     * commands coming out of the last one to ret.
+     */
+    private void preprocessCommand(ParsedCommand command, int stage,
+            final GcodeState initialState, List<String> ret) throws GcodeParserException {
+        if (stage == stages.size()) {
+            ret.add(command.getCommand());
+            return;
+        }
+
+        GcodeState tempState = stageStates[stage];
+        // The arc expander changes the lastGcodeCommand which causes the following to fail:
+        // G2 Y-0.7 J-14.7
+        // Y28.7 J14.7 (this line treated as a G1)
+        tempState.currentMotionMode = initialState.currentMotionMode;
+        List<ParsedCommand> intermediate = stages.get(stage).processCommand(command, tempState);
+
+        for (ParsedCommand c : intermediate) {
+            // Update the state of this processor before the next line. A command
+            // passed through unchanged keeps its words, so it isn't split again.
+            applyCommand(c, 0, tempState);
+            preprocessCommand(c, stage + 1, initialState, ret);
+        }
+    }
 }
@@ -21,13 +21,16 @@ package com.geberl.gcodesender.gcode;
 import static com.geberl.gcodesender.gcode.util.Code.*;
 import static com.geberl.gcodesender.gcode.util.Code.ModalGroup.Motion;
 
-import java.text.DecimalFormat;
 import java.util.*;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 
+import com.geberl.gcodesender.gcode.util.ArcTessellation;
 import com.geberl.gcodesender.gcode.util.Code;
+import com.geberl.gcodesender.gcode.util.DecimalTruncator;
+import com.geberl.gcodesender.gcode.util.GcodeLineScanner;
+import com.geberl.gcodesender.gcode.util.GcodeWords;
 import com.geberl.gcodesender.gcode.util.PlaneFormatter;
 import com.geberl.gcodesender.model.Position;
 
@@ -40,13 +43,8 @@ public class GcodePreprocessorUtils {
 
     private static final String EMPTY = "";
     public static final Pattern COMMENT = Pattern.compile("\\(.*\\)|\\s*;.*|%$");
-    private static final Pattern COMMENTPARSE = Pattern.compile("(?<=\\()[^\\(\\)]*|(?<=\\;).*|%");
     private static final Pattern GCODE_PATTERN = Pattern.compile("[Gg]0*(\\d+)");
 
-    private static int decimalLength = -1;
-    private static Pattern decimalPattern;
-    private static DecimalFormat decimalFormatter;
-
     /**
      * Searches the command string for an 'f' and replaces the speed value 
      * between the 'f' and the next space with a percentage of that speed.
@@ -74,71 +72,22 @@ public class GcodePreprocessorUtils {
      * Removes any comments within parentheses or beginning with a semi-colon.
      */
     static public String removeComment(String command) {
-        return COMMENT.matcher(command).replaceAll(EMPTY);
+        return GcodeLineScanner.removeComment(command);
     }
     
     /**
      * Searches for a comment in the input string and returns the first match.
      */
     static public String parseComment(String command) {
-        String comment = EMPTY;
-
-        // REGEX: Find any comment, includes the comment characters:
-        //              "(?<=\()[^\(\)]*|(?<=\;)[^;]*"
-        //              "(?<=\\()[^\\(\\)]*|(?<=\\;)[^;]*"
-        Matcher matcher = COMMENTPARSE.matcher(command);
-        if (matcher.find()){
-            comment = matcher.group(0);
-        }
-
-        return comment;
+        return GcodeLineScanner.parseComment(command);
     }
     
+    /**
+     * Rounds every number with more than length fractional digits, see
+     * {@link DecimalTruncator}.
+     */
     static public String truncateDecimals(int length, String command) {
-        if (length != decimalLength) {
-            //Only build the decimal formatter if the truncation length has changed.
-            updateDecimalFormatter(length);
-
-        }
-        Matcher matcher = decimalPattern.matcher(command);
-
-        // Build up the truncated command.
-        Double d;
-        StringBuffer sb = new StringBuffer();
-        while (matcher.find()) {
-            d = Double.parseDouble(matcher.group());
-            matcher.appendReplacement(sb, decimalFormatter.format(d));
-        }
-        matcher.appendTail(sb);
-        
-        // Return new command.
-        return sb.toString();
-    }
-
-    private static void updateDecimalFormatter(int length) {
-        StringBuilder df = new StringBuilder();
-
-        // Build up the decimal formatter.
-        df.append("#");
-
-        if (length != 0) {
-            df.append(".");
-        }
-        for (int i = 0; i < length; i++) {
-            df.append('#');
-        }
-
-        decimalFormatter = new DecimalFormat(df.toString());
-
-        // Build up the regular expression.
-        df = new StringBuilder();
-        df.append("\\d+\\.\\d");
-        for (int i = 0; i < length; i++) {
-            df.append("\\d");
-        }
-        df.append('+');
-        decimalPattern = Pattern.compile(df.toString());
-        decimalLength = length;
+        return DecimalTruncator.truncate(command, length);
     }
 
     static public List<String> parseCodes(List<String> args, char code) {
@@ -196,6 +145,24 @@ public class GcodePreprocessorUtils {
         return updatePointWithCommand(initial, x, y, z, a, b, absoluteMode);
     }
 
+    /**
+     * Update a point given the arguments of a command, using a parsed word table.
+     */
+    static public Position updatePointWithCommand(GcodeWords commandArgs, Position initial, boolean absoluteMode) {
+
+        double x = commandArgs.get('X');
+        double y = commandArgs.get('Y');
+        double z = commandArgs.get('Z');
+        double a = commandArgs.get('A');
+        double b = commandArgs.get('B');
+
+        if (Double.isNaN(x) && Double.isNaN(y) && Double.isNaN(z) && Double.isNaN(a) && Double.isNaN(b)) {
+            return null;
+        }
+
+        return updatePointWithCommand(initial, x, y, z, a, b, absoluteMode);
+    }
+
     /**
      * Update a point given the new coordinates.
      */
@@ -262,66 +229,95 @@ public class GcodePreprocessorUtils {
 
     }
 
-    static public String generateLineFromPoints(final Code command, final Position start, final Position end, final boolean absoluteMode, DecimalFormat formatter) {
-        DecimalFormat df = formatter;
-        if (df == null) {
-            df = new DecimalFormat("0.##");
+    static public Position updateCenterWithCommand(
+            GcodeWords commandArgs,
+            Position initial,
+            Position nextPoint,
+            boolean absoluteIJKMode,
+            boolean clockwise,
+            PlaneFormatter plane) {
+        double i      = commandArgs.get('I');
+        double j      = commandArgs.get('J');
+        double k      = commandArgs.get('K');
+        double radius = commandArgs.get('R');
+
+        if (Double.isNaN(i) && Double.isNaN(j) && Double.isNaN(k)) {
+            return GcodePreprocessorUtils.convertRToCenter(
+                            initial, nextPoint, radius, absoluteIJKMode,
+                            clockwise, plane);
         }
-        
-        StringBuilder sb = new StringBuilder();
+
+        return updatePointWithCommand(initial, i, j, k, 0, 0, absoluteIJKMode);
+    }
+
+    /**
+     * Generates a line to end, the coordinates are rounded to the given number
+     * of fractional digits.
+     */
+    static public String generateLineFromPoints(final Code command, final Position start, final Position end, final boolean absoluteMode, int decimals) {
+        return appendLineFromPoints(new StringBuilder(), command, start, end, absoluteMode, decimals).toString();
+    }
+
+    /**
+     * Appends the line of {@link #generateLineFromPoints} to a StringBuilder.
+     */
+    static public StringBuilder appendLineFromPoints(StringBuilder sb, final Code command, final Position start, final Position end, final boolean absoluteMode, int decimals) {
         sb.append(command);
 
         if (absoluteMode) {
             if (!Double.isNaN(end.x)) {
                 sb.append("X");
-                sb.append(df.format(end.x));
+                DecimalTruncator.append(sb, end.x, decimals);
             }
             if (!Double.isNaN(end.y)) {
                 sb.append("Y");
-                sb.append(df.format(end.y));
+                DecimalTruncator.append(sb, end.y, decimals);
             }
             if (!Double.isNaN(end.z)) {
                 sb.append("Z");
-                sb.append(df.format(end.z));
+                DecimalTruncator.append(sb, end.z, decimals);
             }
             if (!Double.isNaN(end.a)) {
                 sb.append("A");
-                sb.append(df.format(end.a));
+                DecimalTruncator.append(sb, end.a, decimals);
             }
             if (!Double.isNaN(end.b)) {
                 sb.append("B");
-                sb.append(df.format(end.b));
+                DecimalTruncator.append(sb, end.b, decimals);
             }
         } else { // calculate offsets.
             if (!Double.isNaN(end.x)) {
                 sb.append("X");
-                sb.append(df.format(end.x-start.x));
+                DecimalTruncator.append(sb, end.x-start.x, decimals);
             }
             if (!Double.isNaN(end.y)) {
                 sb.append("Y");
-                sb.append(df.format(end.y-start.x));
+                DecimalTruncator.append(sb, end.y-start.y, decimals);
             }
             if (!Double.isNaN(end.z)) {
                 sb.append("Z");
-                sb.append(df.format(end.z-start.x));
+                DecimalTruncator.append(sb, end.z-start.z, decimals);
             }
             if (!Double.isNaN(end.a)) {
                 sb.append("A");
-                sb.append(df.format(end.a-start.x));
+                DecimalTruncator.append(sb, end.a-start.a, decimals);
             }
             if (!Double.isNaN(end.b)) {
                 sb.append("B");
-                sb.append(df.format(end.b-start.x));
+                DecimalTruncator.append(sb, end.b-start.b, decimals);
             }
         }
         
-        return sb.toString();
+        return sb;
     }
     
     /**
      * Splits a gcode command by each word/argument, doesn't care about spaces.
      * This command is about the same speed as the string.split(" ") command,
      * but might be a little faster using precompiled regex.
+     *
+     * For looking up words prefer {@link GcodeWords}, which splits the command
+     * into a reusable table without creating strings.
      */
     static public List<String> splitCommand(String command) {
         // Special handling for GRBL system commands which will not be splitted
@@ -368,8 +364,6 @@ public class GcodePreprocessorUtils {
         return l;
     }
     
-    // TODO: Replace everything that uses this with a loop that loops through
-    //       the string and creates a hash with all the values.
     static public boolean hasAxisWords(List<String> argList) {
         for(String t : argList) {
             if (t.length() > 1) {
@@ -382,8 +376,6 @@ public class GcodePreprocessorUtils {
         return false;
     }
 
-    // TODO: Replace everything that uses this with a loop that loops through
-    //       the string and creates a hash with all the values.
     /**
      * Pulls out a word, like "F100", "S1300", "T0", "X-0.5"
      */
@@ -399,8 +391,6 @@ public class GcodePreprocessorUtils {
         return null;
     }
 
-    // TODO: Replace everything that uses this with a loop that loops through
-    //       the string and creates a hash with all the values.
     static public double parseCoord(List<String> argList, char c)
     {
         String word = extractWord(argList, c);
@@ -426,6 +416,26 @@ public class GcodePreprocessorUtils {
             double minArcLength,
             double arcSegmentLength,
             PlaneFormatter plane) {
+        ArcTessellation arc = tessellateArc(start, end, center, clockwise, R, minArcLength, arcSegmentLength, plane);
+        if (arc == null) {
+            return null;
+        }
+        return GcodePreprocessorUtils.generatePointsAlongArcBDring(start, end, center, arc.offsets(), plane);
+    }
+
+    /**
+     * Calculates how an arc is split into segments.
+     * @return the tessellation or null if the arc is shorter than minArcLength.
+     */
+    static public ArcTessellation tessellateArc(
+            final Position start,
+            final Position end,
+            final Position center,
+            boolean clockwise,
+            double R,
+            double minArcLength,
+            double arcSegmentLength,
+            PlaneFormatter plane) {
         double radius = R;
 
         // Calculate radius if necessary.
@@ -455,50 +465,36 @@ public class GcodePreprocessorUtils {
             numPoints = (int)Math.ceil(arcLength/arcSegmentLength);
         }
 
-        return GcodePreprocessorUtils.generatePointsAlongArcBDring(start, end, center, clockwise, radius, startAngle, sweep, numPoints, plane);
+        // Calculate radius if necessary.
+        if (radius == 0) {
+            radius = Math.sqrt(Math.pow(plane.axis0(start) - plane.axis1(center), 2.0) + Math.pow(plane.axis1(start) - plane.axis1(center), 2.0));
+        }
+
+        return new ArcTessellation(radius, startAngle, sweep, clockwise, numPoints);
     }
 
     /**
      * Generates the points along an arc including the start and end points.
+     * @param offsets the offsets of the points from the center, see
+     *                {@link ArcTessellation#offsets()}.
      */
     static private List<Position> generatePointsAlongArcBDring(
             final Position p1,
             final Position p2,
             final Position center,
-            boolean isCw,
-            double radius, 
-            double startAngle,
-            double sweep,
-            int numPoints,
+            double[] offsets,
             PlaneFormatter plane) {
 
         Position lineStart = new Position(p1);
-        List<Position> segments = new ArrayList<>();
-        double angle;
-
-        // Calculate radius if necessary.
-        if (radius == 0) {
-            radius = Math.sqrt(Math.pow(plane.axis0(p1) - plane.axis1(center), 2.0) + Math.pow(plane.axis1(p1) - plane.axis1(center), 2.0));
-        }
+        int numPoints = offsets.length / 2;
+        List<Position> segments = new ArrayList<>(numPoints + 1);
 
         double linearIncrement = (plane.linear(p2) - plane.linear(p1)) / numPoints;
         double linearPos = plane.linear(lineStart);
         for(int i=0; i<numPoints; i++)
         {
-            if (isCw) {
-                angle = (startAngle - i * sweep/numPoints);
-            } else {
-                angle = (startAngle + i * sweep/numPoints);
-            }
-
-            if (angle >= Math.PI * 2) {
-                angle = angle - Math.PI * 2;
-            }
-
-            //lineStart.x = Math.cos(angle) * radius + center.x;
-            plane.setAxis0(lineStart, Math.cos(angle) * radius + plane.axis0(center));
-            //lineStart.y = Math.sin(angle) * radius + center.y;
-            plane.setAxis1(lineStart, Math.sin(angle) * radius + plane.axis1(center));
+            plane.setAxis0(lineStart, offsets[2 * i] + plane.axis0(center));
+            plane.setAxis1(lineStart, offsets[2 * i + 1] + plane.axis1(center));
             //lineStart.z += zIncrement;
             plane.setLinear(lineStart, linearPos);
             linearPos += linearIncrement;
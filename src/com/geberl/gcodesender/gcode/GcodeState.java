@@ -24,6 +24,7 @@ import static com.geberl.gcodesender.gcode.util.Code.G54;
 import static com.geberl.gcodesender.gcode.util.Code.G90;
 import static com.geberl.gcodesender.gcode.util.Code.G91_1;
 import static com.geberl.gcodesender.gcode.util.Code.G94;
+import static com.geberl.gcodesender.gcode.util.Code.M5;
 
 import com.geberl.gcodesender.gcode.util.Code;
 import com.geberl.gcodesender.gcode.util.Plane;
@@ -61,6 +62,9 @@ public class GcodeState {
     public boolean isMetric = true;
     public Code units = G21;
 
+    // group 7
+    public Code spindleMode = M5;
+
     // group 12
     public Code offset = G54;
 
@@ -89,37 +93,67 @@ public class GcodeState {
 
     public GcodeState copy() {
         GcodeState ret = new GcodeState();
-        ret.currentMotionMode = currentMotionMode;
-        ret.plane = plane;
-
-        ret.inAbsoluteMode = inAbsoluteMode;
-        ret.distanceMode = distanceMode;
-
-        ret.inAbsoluteIJKMode = inAbsoluteIJKMode;
-        ret.arcDistanceMode = arcDistanceMode;
-
-        ret.feedMode = feedMode;
-
-        ret.isMetric = isMetric;
-        ret.units = units;
-
-        ret.speed = speed;
-        ret.spindleSpeed = spindleSpeed;
+        ret.set(this);
+        return ret;
+    }
 
-        ret.offset = offset;
+    /**
+     * Returns an independent copy of the state. A state updated in place by
+     * GcodeParser.applyCommand keeps changing, a snapshot should be taken
+     * wherever it is kept as history.
+     */
+    public GcodeState snapshot() {
+        return copy();
+    }
 
-        if (currentPoint != null) {
-            ret.currentPoint = new Position(currentPoint.x, currentPoint.y, currentPoint.z, currentPoint.a, currentPoint.b, UnitUtils.Units.getUnits(units));
+    /**
+     * Overwrites this state with the values of another one, reusing the
+     * current point of this state if there is one.
+     */
+    public void set(GcodeState other) {
+        currentMotionMode = other.currentMotionMode;
+        plane = other.plane;
+
+        inAbsoluteMode = other.inAbsoluteMode;
+        distanceMode = other.distanceMode;
+
+        inAbsoluteIJKMode = other.inAbsoluteIJKMode;
+        arcDistanceMode = other.arcDistanceMode;
+
+        feedMode = other.feedMode;
+
+        isMetric = other.isMetric;
+        units = other.units;
+
+        speed = other.speed;
+        spindleSpeed = other.spindleSpeed;
+        spindleMode = other.spindleMode;
+
+        offset = other.offset;
+
+        Position p = other.currentPoint;
+        if (p == null) {
+            currentPoint = null;
+        } else {
+            Units pointUnits = UnitUtils.Units.getUnits(units);
+            if (currentPoint != null && currentPoint.getUnits() == pointUnits) {
+                currentPoint.x = p.x;
+                currentPoint.y = p.y;
+                currentPoint.z = p.z;
+                currentPoint.a = p.a;
+                currentPoint.b = p.b;
+            } else {
+                currentPoint = new Position(p.x, p.y, p.z, p.a, p.b, pointUnits);
+            }
         }
-        ret.commandNumber = commandNumber;
-        return ret;
+        commandNumber = other.commandNumber;
     }
 
     @Override
     public String toString() {
-      String pattern = "metric: %b, motionMode: %s, plane: %s, absoluteMode: %b, ijkMode: %b, feed: %f, spindle: %f, point: %s";
+      String pattern = "metric: %b, motionMode: %s, plane: %s, absoluteMode: %b, ijkMode: %b, feed: %f, spindle: %s %f, point: %s";
       return String.format(pattern,
-              isMetric, currentMotionMode, plane, inAbsoluteMode, inAbsoluteIJKMode, speed, spindleSpeed, currentPoint);
+              isMetric, currentMotionMode, plane, inAbsoluteMode, inAbsoluteIJKMode, speed, spindleMode, spindleSpeed, currentPoint);
 
     }
 }
@@ -65,4 +65,13 @@ public interface IGcodeParser {
      * @throws GcodeParserException 
      */
     List<String> preprocessCommand(String command, GcodeState initial) throws GcodeParserException;
+
+    /**
+     * Returns the commands the processors held back, called after the last
+     * command of a program was preprocessed.
+     * @param initial state after the last command
+     * @return a collection of postprocessed commands
+     * @throws GcodeParserException 
+     */
+    List<String> flushCommandProcessors(GcodeState initial) throws GcodeParserException;
 }
@@ -0,0 +1,108 @@
+/*
+    Copyright 2026 Stephan Geberl
+
+    This file is part of WireCutter/Mill GCode - Sender (WGS) (5 Axis-Version).
+    WGS is derived from UGS by Will Winder (2012 - 2018)
+
+    WGS is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    UGS is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with WGS.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.geberl.gcodesender.gcode;
+
+import static com.geberl.gcodesender.gcode.util.Code.ModalGroup.Motion;
+
+import com.geberl.gcodesender.gcode.util.Code;
+import com.geberl.gcodesender.gcode.util.GcodeParserException;
+import com.geberl.gcodesender.gcode.util.GcodeWords;
+import com.geberl.gcodesender.model.Position;
+
+/**
+ * A gcode command passed between command processors. The command is split
+ * into words the first time they are needed and the words are kept, so a
+ * command which goes through several processors unchanged is only split once.
+ *
+ * A command is immutable, a processor which changes it returns a new one.
+ */
+public class ParsedCommand {
+    private final String command;
+    private GcodeWords words = null;
+    private String comment = null;
+
+    public ParsedCommand(String command) {
+        this.command = command;
+    }
+
+    public String getCommand() {
+        return command;
+    }
+
+    /**
+     * @return the words of the command, the table must not be modified.
+     */
+    public GcodeWords getWords() {
+        if (words == null) {
+            words = new GcodeWords().parse(command);
+        }
+        return words;
+    }
+
+    /**
+     * @return the first comment of the command without the comment characters,
+     *         an empty string if there is none.
+     */
+    public String getComment() {
+        if (comment == null) {
+            comment = GcodePreprocessorUtils.parseComment(command);
+        }
+        return comment;
+    }
+
+    /**
+     * Returns the motion code the command runs in a state. That is the motion
+     * code on the line or, for a line with only axis words, the current
+     * motion mode.
+     *
+     * @return the motion code or null if the command doesn't move.
+     */
+    public Code getMotionCode(GcodeState state) {
+        GcodeWords args = getWords();
+        boolean consumesMotion = false;
+        for (int i = 0; i < args.getNumGCodes(); i++) {
+            Code code = args.getGCode(i);
+            if (code.getType() == Motion) {
+                return code;
+            }
+            consumesMotion |= code.consumesMotion();
+        }
+
+        if (!consumesMotion && args.hasAxisWords()) {
+            return state.currentMotionMode;
+        }
+        return null;
+    }
+
+    /**
+     * Returns the position of the machine after the command ran in a state,
+     * the state isn't modified.
+     */
+    public Position getEndPoint(GcodeState state) throws GcodeParserException {
+        GcodeState end = state.copy();
+        GcodeParser.applyCommand(this, 0, end);
+        return end.currentPoint;
+    }
+
+    @Override
+    public String toString() {
+        return command;
+    }
+}
@@ -26,9 +26,12 @@ package com.geberl.gcodesender.gcode.processors;
 import com.geberl.gcodesender.gcode.GcodeParser;
 import com.geberl.gcodesender.gcode.GcodePreprocessorUtils;
 import com.geberl.gcodesender.gcode.GcodeState;
+import com.geberl.gcodesender.gcode.ParsedCommand;
 import com.geberl.gcodesender.gcode.GcodeParser.GcodeMeta;
 import com.geberl.gcodesender.gcode.GcodePreprocessorUtils.SplitCommand;
+import com.geberl.gcodesender.gcode.util.ArcTessellation;
 import com.geberl.gcodesender.gcode.util.Code;
+import com.geberl.gcodesender.gcode.util.DecimalTruncator;
 import com.geberl.gcodesender.gcode.util.GcodeParserException;
 import com.geberl.gcodesender.gcode.util.PlaneFormatter;
 import com.geberl.gcodesender.model.Position;
@@ -36,26 +39,54 @@ import com.geberl.gcodesender.types.PointSegment;
 import com.google.common.collect.Iterables;
 
 import static com.geberl.gcodesender.gcode.util.Code.G1;
+import static com.geberl.gcodesender.gcode.util.Code.G2;
+import static com.geberl.gcodesender.gcode.util.Code.G3;
 
-import java.text.DecimalFormat;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  *
  * @author wwinder
  */
-public class ArcExpander implements CommandProcessor {
+public class ArcExpander implements StructuredCommandProcessor {
     final private boolean convertToLines;
     final private double length;
-    final private DecimalFormat df;
+
+    // Fractional digits of the generated coordinates.
+    private static final int DECIMALS = 2;
+
+    // Fractional digits of generated arcs, the controller rejects an arc if
+    // the distances of its start and end from the center differ too much.
+    private static final int ARC_DECIMALS = 4;
+
+    // Number of arc shapes kept, the least recently used one is dropped.
+    private static final int CACHE_SIZE = 128;
+
+    // Offsets of the points of recent arcs from their centers. Files often
+    // repeat an arc at other positions, those arcs have equal tessellations.
+    // Like the processor, the cache is only used by one parser at a time.
+    private final Map<ArcTessellation, double[]> offsetCache =
+            new LinkedHashMap<ArcTessellation, double[]>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<ArcTessellation, double[]> eldest) {
+                    return size() > CACHE_SIZE;
+                }
+            };
 
     @Override
     public String getHelp() {
+        if (!convertToLines) {
+            return "Split arcs\\: Splits large arc commands (G2/G3) into a series of smaller arcs." + "\n"
+                    + "Arc segment length\\: The maximum length (in mm) of the smaller arcs."
+                    + ": " + DecimalTruncator.format(length, DECIMALS);
+        }
         return "Convert arcs to lines\\: Converts small arc commands (G2/G3) to a series of G1 commands." + "\n"
                 + "Small arc segment length\\: The length (in mm) of segments in an expanded arc."
-                + ": " + df.format(length);
+                + ": " + DecimalTruncator.format(length, DECIMALS);
     }
 
     /**
@@ -65,18 +96,21 @@ public class ArcExpander implements CommandProcessor {
     public ArcExpander(boolean convertToLines, double length) {
         this.convertToLines = convertToLines;
         this.length = length;
-
-        // Setup decimal formatter
-        df = new DecimalFormat("#.##");
     }
 
     @Override
-    public List<String> processCommand(String command, GcodeState state) throws GcodeParserException {
+    public List<ParsedCommand> processCommand(ParsedCommand command, GcodeState state) throws GcodeParserException {
         if (state.currentPoint == null) throw new GcodeParserException("There is no starting point, unable to expand arc.");
 
-        List<String> results = new ArrayList<>();
+        // Only arcs need to be parsed any further.
+        Code motion = command.getMotionCode(state);
+        if (motion != G2 && motion != G3) {
+            return Collections.singletonList(command);
+        }
+
+        List<ParsedCommand> results = new ArrayList<>();
 
-        List<GcodeMeta> commands = GcodeParser.processCommand(command, 0, state);
+        List<GcodeMeta> commands = GcodeParser.processCommand(command, 0, state, false);
 
         // If this is not an arc, there is nothing to do.
         Code c = hasArcCommand(commands);
@@ -84,41 +118,102 @@ public class ArcExpander implements CommandProcessor {
             return Collections.singletonList(command);
         }
 
-        SplitCommand sc = GcodePreprocessorUtils.extractMotion(c, command);
-        if (sc.remainder.length() > 0) {
-            results.add(sc.remainder);
-        }
-
         GcodeMeta arcMeta = Iterables.getLast(commands);
         PointSegment ps = arcMeta.point;
         Position start = state.currentPoint;
         Position end = arcMeta.point.point();
 
-        List<Position> points = GcodePreprocessorUtils.generatePointsAlongArcBDring(
+        PlaneFormatter plane = new PlaneFormatter(ps.getPlaneState());
+        ArcTessellation arc = GcodePreprocessorUtils.tessellateArc(
                 start, end, ps.center(), ps.isClockwise(),
-                ps.getRadius(), 0, this.length, new PlaneFormatter(ps.getPlaneState()));
+                ps.getRadius(), 0, this.length, plane);
+
+        // An arc which is short enough already is kept as it is.
+        if (!convertToLines && arc.numPoints <= 1) {
+            return Collections.singletonList(command);
+        }
+        double[] offsets = offsetCache.computeIfAbsent(arc, ArcTessellation::offsets);
 
-        // That function returns the first and last points. Exclude the first
-        // point because the previous gcode command ends there already.
-        points.remove(0);
+        SplitCommand sc = GcodePreprocessorUtils.extractMotion(c, command.getCommand());
+        if (sc.remainder.length() > 0) {
+            results.add(new ParsedCommand(sc.remainder));
+        }
 
         if (convertToLines) {
-            // Tack the speed onto the first line segment in case the arc also
-            // changed the feed value.
-            String feed = "F" + arcMeta.point.getSpeed();
-            for (Position point : points) {
-                results.add(GcodePreprocessorUtils.generateLineFromPoints(G1, start, point, state.inAbsoluteMode, df) + feed);
-                start = point;
-                feed = "";
-            }
+            addSegments(results, G1, DECIMALS, start, end, ps.center(), offsets, plane, state, arcMeta.point.getSpeed());
         } else {
-            // TODO: Generate arc segments.
-            throw new UnsupportedOperationException("I have not implemented this.");
+            Code arcCode = ps.isClockwise() ? G2 : G3;
+            addSegments(results, arcCode, ARC_DECIMALS, start, end, ps.center(), offsets, plane, state, arcMeta.point.getSpeed());
         }
 
         return results;
     }
 
+    /**
+     * Adds a command for every segment of an arc, the points are the center
+     * plus the offsets. Segments are G1 lines or, for G2/G3, arcs around the
+     * same center. All commands are built with the same two positions and
+     * StringBuilder.
+     */
+    private static void addSegments(List<ParsedCommand> results, Code code, int decimals,
+            Position start, Position end, Position center, double[] offsets, PlaneFormatter plane,
+            GcodeState state, double speed) {
+        int numPoints = offsets.length / 2;
+        Position previous = new Position(start);
+        Position point = new Position(start);
+        StringBuilder sb = new StringBuilder();
+
+        double linearIncrement = (plane.linear(end) - plane.linear(start)) / numPoints;
+        double linearPos = plane.linear(start) + linearIncrement;
+
+        // The first point is the start of the arc, the previous gcode command
+        // ends there already. The last line goes to the end point.
+        for (int i = 1; i <= numPoints; i++) {
+            Position next = end;
+            if (i < numPoints) {
+                plane.setAxis0(point, offsets[2 * i] + plane.axis0(center));
+                plane.setAxis1(point, offsets[2 * i + 1] + plane.axis1(center));
+                plane.setLinear(point, linearPos);
+                linearPos += linearIncrement;
+                next = point;
+            }
+
+            sb.setLength(0);
+            GcodePreprocessorUtils.appendLineFromPoints(sb, code, previous, next, state.inAbsoluteMode, decimals);
+            if (code != G1) {
+                appendCenter(sb, previous, center, plane, state.inAbsoluteIJKMode);
+            }
+            if (i == 1) {
+                // Tack the speed onto the first line segment in case the arc
+                // also changed the feed value.
+                sb.append('F').append(speed);
+            }
+            results.add(new ParsedCommand(sb.toString()));
+
+            Position swap = previous;
+            previous = point;
+            point = swap;
+        }
+    }
+
+    /**
+     * Appends the center offset words of an arc starting at start.
+     */
+    private static void appendCenter(StringBuilder sb, Position start, Position center, PlaneFormatter plane,
+            boolean absoluteIJKMode) {
+        double offset0 = plane.axis0(center);
+        double offset1 = plane.axis1(center);
+        if (!absoluteIJKMode) {
+            offset0 -= plane.axis0(start);
+            offset1 -= plane.axis1(start);
+        }
+
+        sb.append(plane.axis0Offset());
+        DecimalTruncator.append(sb, offset0, ARC_DECIMALS);
+        sb.append(plane.axis1Offset());
+        DecimalTruncator.append(sb, offset1, ARC_DECIMALS);
+    }
+
     private static Code hasArcCommand(List<GcodeMeta> commands) {
         if (commands == null) return null;
         for (GcodeMeta meta : commands) {
@@ -0,0 +1,45 @@
+/*
+    Copyright 2026 Stephan Geberl
+
+    This file is part of WireCutter/Mill GCode - Sender (WGS) (5 Axis-Version).
+    WGS is derived from UGS by Will Winder (2012 - 2018)
+
+    WGS is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    UGS is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with WGS.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.geberl.gcodesender.gcode.processors;
+
+import java.util.List;
+
+import com.geberl.gcodesender.gcode.GcodeState;
+import com.geberl.gcodesender.gcode.ParsedCommand;
+import com.geberl.gcodesender.gcode.util.GcodeParserException;
+
+/**
+ * A command processor which holds commands back until it has seen the
+ * following ones, for example to merge several commands into one. A command
+ * which is held back is replaced with an empty command, so every line of the
+ * program still has a row.
+ *
+ * The commands held back are returned by {@link #flush(GcodeState)}, which
+ * the GcodeParser calls at the end of a program. Unlike other processors a
+ * buffering processor keeps state from one line to the next, so an instance
+ * is only used for one program at a time.
+ */
+public interface BufferingCommandProcessor extends StructuredCommandProcessor {
+    /**
+     * Returns the commands held back and forgets them.
+     * @param state State of the gcode parser after the last command.
+     */
+    List<ParsedCommand> flush(GcodeState state) throws GcodeParserException;
+}
@@ -0,0 +1,263 @@
+/*
+    Copyright 2026 Stephan Geberl
+
+    This file is part of WireCutter/Mill GCode - Sender (WGS) (5 Axis-Version).
+    WGS is derived from UGS by Will Winder (2012 - 2018)
+
+    WGS is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    UGS is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with WGS.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.geberl.gcodesender.gcode.processors;
+
+import static com.geberl.gcodesender.gcode.util.Code.G1;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import com.geberl.gcodesender.gcode.GcodePreprocessorUtils;
+import com.geberl.gcodesender.gcode.GcodeState;
+import com.geberl.gcodesender.gcode.ParsedCommand;
+import com.geberl.gcodesender.gcode.util.DecimalTruncator;
+import com.geberl.gcodesender.gcode.util.GcodeParserException;
+import com.geberl.gcodesender.gcode.util.GcodeWords;
+import com.geberl.gcodesender.model.Position;
+import com.geberl.gcodesender.model.UnitUtils.Units;
+
+/**
+ * Merges runs of G1 moves which lie on a straight line into a single move.
+ * A run is merged as long as every point of it is within the tolerance of the
+ * line from the start of the run to its end, in all five axes. Every merged
+ * command saves a round trip to the controller.
+ *
+ * Only moves in absolute distance mode with nothing but axis words and a feed
+ * are merged, a feed is only allowed on the first move of a run. A run which
+ * isn't merged is returned unchanged, a merged move only has the axis words
+ * used in the run.
+ *
+ * Every command of this stage passes through the merger, so while moves are
+ * held back the machine is at the end of the run. The state passed in only
+ * follows the commands returned, it lags behind for the moves held back.
+ */
+public class CollinearLineMerger implements BufferingCommandProcessor {
+    // Longest run merged into one move, limits the work per move.
+    private static final int MAX_RUN = 64;
+
+    private static final int DECIMALS = 4;
+    private static final int AXES = 5;
+    private static final char[] AXIS_LETTERS = { 'X', 'Y', 'Z', 'A', 'B' };
+
+    private final double toleranceMM;
+
+    // points[0] is the start of the run, points[1..runLength] the ends of
+    // the moves in it.
+    private final double[][] points = new double[MAX_RUN + 1][AXES];
+    private int runLength = 0;
+    private ParsedCommand firstCommand;
+    private double runFeed;
+    // Bit i is set if axis i has a word in a move of the run.
+    private int runAxes;
+
+    /**
+     * @param toleranceMM the maximum distance of a merged point from the
+     *                    merged line.
+     */
+    public CollinearLineMerger(double toleranceMM) {
+        if (toleranceMM < 0) {
+            throw new RuntimeException(this.getClass().getSimpleName()
+                    + ": The tolerance can't be negative.");
+        }
+        this.toleranceMM = toleranceMM;
+    }
+
+    @Override
+    public String getHelp() {
+        return "Merge collinear lines\\: Merges consecutive G1 moves along a straight line into one move." + "\n"
+                + "Chord tolerance\\: The maximum distance (in mm) of a merged point from the new line."
+                + ": " + toleranceMM;
+    }
+
+    @Override
+    public List<ParsedCommand> processCommand(ParsedCommand command, GcodeState state) throws GcodeParserException {
+        // An empty command doesn't move the machine, the run goes on.
+        if (command.getCommand().isEmpty()) {
+            return Collections.singletonList(command);
+        }
+
+        if (!isMergeable(command, state)) {
+            if (runLength == 0) {
+                return Collections.singletonList(command);
+            }
+            List<ParsedCommand> ret = new ArrayList<>(2);
+            ret.add(endRun());
+            ret.add(command);
+            return ret;
+        }
+
+        Position current = runLength == 0 ? state.currentPoint : getRunEnd(state.currentPoint.getUnits());
+        Position end = GcodePreprocessorUtils.updatePointWithCommand(command.getWords(), current, true);
+
+        if (runLength == 0) {
+            startRun(command, current, end);
+            return Collections.singletonList(new ParsedCommand(""));
+        }
+
+        double tolerance = state.isMetric ? toleranceMM : toleranceMM / 25.4;
+        if (runLength < MAX_RUN && command.getWords().count('F') == 0 && fits(end, tolerance)) {
+            setPoint(++runLength, end);
+            runAxes |= axesOf(command);
+            return Collections.singletonList(new ParsedCommand(""));
+        }
+
+        ParsedCommand merged = endRun();
+        startRun(command, current, end);
+        return Collections.singletonList(merged);
+    }
+
+    @Override
+    public List<ParsedCommand> flush(GcodeState state) {
+        if (runLength == 0) {
+            return Collections.emptyList();
+        }
+        return Collections.singletonList(endRun());
+    }
+
+    /**
+     * True for a G1 move in absolute mode with only axis words and a feed.
+     */
+    private static boolean isMergeable(ParsedCommand command, GcodeState state) {
+        if (!state.inAbsoluteMode || command.getCommand().isEmpty()) {
+            return false;
+        }
+
+        GcodeWords words = command.getWords();
+        if (!words.hasAxisWords() || words.getNumGCodes() > 1 || command.getMotionCode(state) != G1) {
+            return false;
+        }
+        // Like G21, a code other than G1 would change the state.
+        if (words.getNumGCodes() == 1 && words.getGCode(0) != G1) {
+            return false;
+        }
+
+        for (char letter = 'A'; letter <= 'Z'; letter++) {
+            switch (letter) {
+                case 'X': case 'Y': case 'Z': case 'A': case 'B': case 'F': case 'G':
+                    if (words.count(letter) > 1) {
+                        return false;
+                    }
+                    break;
+                default:
+                    if (words.has(letter)) {
+                        return false;
+                    }
+            }
+        }
+        return true;
+    }
+
+    private void startRun(ParsedCommand command, Position start, Position end) {
+        firstCommand = command;
+        runFeed = command.getWords().get('F');
+        runAxes = axesOf(command);
+        setPoint(0, start);
+        setPoint(1, end);
+        runLength = 1;
+    }
+
+    private static int axesOf(ParsedCommand command) {
+        int axes = 0;
+        for (int i = 0; i < AXES; i++) {
+            if (command.getWords().has(AXIS_LETTERS[i])) {
+                axes |= 1 << i;
+            }
+        }
+        return axes;
+    }
+
+    /**
+     * Returns the command for the current run and starts over.
+     */
+    private ParsedCommand endRun() {
+        int length = runLength;
+        runLength = 0;
+        if (length == 1) {
+            return firstCommand;
+        }
+
+        double[] end = points[length];
+        StringBuilder sb = new StringBuilder(G1.name());
+        for (int i = 0; i < AXES; i++) {
+            if ((runAxes & (1 << i)) != 0) {
+                sb.append(AXIS_LETTERS[i]);
+                DecimalTruncator.append(sb, end[i], DECIMALS);
+            }
+        }
+        if (!Double.isNaN(runFeed)) {
+            sb.append('F');
+            DecimalTruncator.append(sb, runFeed, DECIMALS);
+        }
+        return new ParsedCommand(sb.toString());
+    }
+
+    /**
+     * True if the points of the run are within the tolerance of the line from
+     * its start to end.
+     */
+    private boolean fits(Position end, double tolerance) {
+        double[] s = points[0];
+        double[] e = { end.x, end.y, end.z, end.a, end.b };
+
+        double length2 = 0;
+        for (int i = 0; i < AXES; i++) {
+            length2 += (e[i] - s[i]) * (e[i] - s[i]);
+        }
+
+        for (int p = 1; p <= runLength; p++) {
+            double[] point = points[p];
+
+            // Closest point on the segment.
+            double t = 0;
+            if (length2 > 0) {
+                double dot = 0;
+                for (int i = 0; i < AXES; i++) {
+                    dot += (point[i] - s[i]) * (e[i] - s[i]);
+                }
+                t = Math.max(0, Math.min(1, dot / length2));
+            }
+
+            double distance2 = 0;
+            for (int i = 0; i < AXES; i++) {
+                double d = s[i] + t * (e[i] - s[i]) - point[i];
+                distance2 += d * d;
+            }
+            if (!(distance2 <= tolerance * tolerance)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private Position getRunEnd(Units units) {
+        double[] end = points[runLength];
+        return new Position(end[0], end[1], end[2], end[3], end[4], units);
+    }
+
+    private void setPoint(int index, Position p) {
+        double[] point = points[index];
+        point[0] = p.x;
+        point[1] = p.y;
+        point[2] = p.z;
+        point[3] = p.a;
+        point[4] = p.b;
+    }
+}
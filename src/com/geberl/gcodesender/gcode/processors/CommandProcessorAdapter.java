@@ -0,0 +1,79 @@
+/*
+    Copyright 2026 Stephan Geberl
+
+    This file is part of WireCutter/Mill GCode - Sender (WGS) (5 Axis-Version).
+    WGS is derived from UGS by Will Winder (2012 - 2018)
+
+    WGS is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    UGS is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with WGS.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.geberl.gcodesender.gcode.processors;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import com.geberl.gcodesender.gcode.GcodeState;
+import com.geberl.gcodesender.gcode.ParsedCommand;
+import com.geberl.gcodesender.gcode.util.GcodeParserException;
+
+/**
+ * Runs a string command processor on parsed commands. A command the processor
+ * returns unchanged keeps its parsed words.
+ */
+public class CommandProcessorAdapter implements StructuredCommandProcessor {
+    private final CommandProcessor processor;
+
+    public CommandProcessorAdapter(CommandProcessor processor) {
+        this.processor = processor;
+    }
+
+    /**
+     * Returns the processor itself if it works on parsed commands, otherwise
+     * wraps it in an adapter.
+     */
+    public static StructuredCommandProcessor adapt(CommandProcessor processor) {
+        if (processor instanceof StructuredCommandProcessor) {
+            return (StructuredCommandProcessor) processor;
+        }
+        return new CommandProcessorAdapter(processor);
+    }
+
+    public CommandProcessor getProcessor() {
+        return processor;
+    }
+
+    @Override
+    public List<ParsedCommand> processCommand(ParsedCommand command, GcodeState state) throws GcodeParserException {
+        List<String> commands = processor.processCommand(command.getCommand(), state);
+        if (commands.size() == 1 && commands.get(0).equals(command.getCommand())) {
+            return Collections.singletonList(command);
+        }
+
+        List<ParsedCommand> ret = new ArrayList<>(commands.size());
+        for (String c : commands) {
+            ret.add(new ParsedCommand(c));
+        }
+        return ret;
+    }
+
+    @Override
+    public List<String> processCommand(String command, GcodeState state) throws GcodeParserException {
+        return processor.processCommand(command, state);
+    }
+
+    @Override
+    public String getHelp() {
+        return processor.getHelp();
+    }
+}
@@ -25,9 +25,16 @@
  */
 package com.geberl.gcodesender.gcode.processors;
 
+import java.util.Collections;
+import java.util.List;
+
 import com.geberl.gcodesender.gcode.GcodePreprocessorUtils;
+import com.geberl.gcodesender.gcode.GcodeState;
+import com.geberl.gcodesender.gcode.util.GcodeLineScanner;
 
 /**
+ * Removes the same text as the COMMENT pattern, with a scanner instead of
+ * the regular expression.
  *
  * @author wwinder
  */
@@ -35,4 +42,9 @@ public class CommentProcessor extends PatternRemover {
     public CommentProcessor() {
         super(GcodePreprocessorUtils.COMMENT.pattern());
     }
+
+    @Override
+    public List<String> processCommand(String command, GcodeState state) {
+        return Collections.singletonList(GcodeLineScanner.removeComment(command));
+    }
 }
\ No newline at end of file
@@ -24,8 +24,8 @@ package com.geberl.gcodesender.gcode.processors;
 import java.util.ArrayList;
 import java.util.List;
 
-import com.geberl.gcodesender.gcode.GcodePreprocessorUtils;
 import com.geberl.gcodesender.gcode.GcodeState;
+import com.geberl.gcodesender.gcode.util.DecimalTruncator;
 
 /**
  *
@@ -51,7 +51,7 @@ public class DecimalProcessor implements CommandProcessor {
     public List<String> processCommand(String command, GcodeState state) {
         List<String> ret = new ArrayList<>();
         if (numDecimals > 0) {
-            ret.add(GcodePreprocessorUtils.truncateDecimals(numDecimals, command));
+            ret.add(DecimalTruncator.truncate(command, numDecimals));
         } else {
             ret.add(command);
         }
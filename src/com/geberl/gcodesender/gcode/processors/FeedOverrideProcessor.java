@@ -22,16 +22,18 @@
 package com.geberl.gcodesender.gcode.processors;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 import com.geberl.gcodesender.gcode.GcodePreprocessorUtils;
 import com.geberl.gcodesender.gcode.GcodeState;
+import com.geberl.gcodesender.gcode.ParsedCommand;
 
 /**
  *
  * @author wwinder
  */
-public class FeedOverrideProcessor implements CommandProcessor {
+public class FeedOverrideProcessor implements StructuredCommandProcessor {
     private final double percentOverride;
 
     public FeedOverrideProcessor(double percentOverride) {
@@ -46,13 +48,14 @@ public class FeedOverrideProcessor implements CommandProcessor {
     }
 
     @Override
-    public List<String> processCommand(String command, GcodeState state) {
-        List<String> ret = new ArrayList<>();
-        if (percentOverride > 0) {
-            ret.add(GcodePreprocessorUtils.overrideSpeed(command, percentOverride));
-        } else {
-            ret.add(command);
+    public List<ParsedCommand> processCommand(ParsedCommand command, GcodeState state) {
+        // Only lines with a feed word are rewritten.
+        if (percentOverride <= 0 || !command.getWords().has('F')) {
+            return Collections.singletonList(command);
         }
+
+        List<ParsedCommand> ret = new ArrayList<>();
+        ret.add(new ParsedCommand(GcodePreprocessorUtils.overrideSpeed(command.getCommand(), percentOverride)));
         return ret;
     }
 }
\ No newline at end of file
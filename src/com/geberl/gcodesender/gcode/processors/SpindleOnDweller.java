@@ -26,6 +26,7 @@ import java.util.regex.Pattern;
 
 import com.geberl.gcodesender.gcode.GcodePreprocessorUtils;
 import com.geberl.gcodesender.gcode.GcodeState;
+import com.geberl.gcodesender.gcode.ParsedCommand;
 import com.geberl.gcodesender.gcode.util.GcodeParserException;
 
 /**
@@ -33,19 +34,24 @@ import com.geberl.gcodesender.gcode.util.GcodeParserException;
  *
  * @author wwinder
  */
-public class SpindleOnDweller implements CommandProcessor {
-    private final String dwellCommand;
+public class SpindleOnDweller implements StructuredCommandProcessor {
+    private final ParsedCommand dwellCommand;
 
     // Contains an M3 not followed by another digit (i.e. M30)
     private Pattern spindleOnPattern = Pattern.compile(".*[mM][34](?!\\d)(\\D.*)?");
 
     public SpindleOnDweller(double dwellDuration) {
-        this.dwellCommand = String.format(Locale.ROOT, "G4P%.2f", dwellDuration);
+        this.dwellCommand = new ParsedCommand(String.format(Locale.ROOT, "G4P%.2f", dwellDuration));
     }
 
     @Override
-    public List<String> processCommand(String command, GcodeState state) throws GcodeParserException {
-        String noComments = GcodePreprocessorUtils.removeComment(command);
+    public List<ParsedCommand> processCommand(ParsedCommand command, GcodeState state) throws GcodeParserException {
+        // Lines without an M word aren't scanned.
+        if (command.getWords().count('M') == 0) {
+            return Collections.singletonList(command);
+        }
+
+        String noComments = GcodePreprocessorUtils.removeComment(command.getCommand());
         if (spindleOnPattern.matcher(noComments).matches()) {
             return Arrays.asList(command, dwellCommand);
         }
@@ -0,0 +1,55 @@
+/*
+    Copyright 2026 Stephan Geberl
+
+    This file is part of WireCutter/Mill GCode - Sender (WGS) (5 Axis-Version).
+    WGS is derived from UGS by Will Winder (2012 - 2018)
+
+    WGS is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    UGS is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with WGS.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.geberl.gcodesender.gcode.processors;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.geberl.gcodesender.gcode.GcodeState;
+import com.geberl.gcodesender.gcode.ParsedCommand;
+import com.geberl.gcodesender.gcode.util.GcodeParserException;
+
+/**
+ * A command processor working on parsed commands, it can look at the words of
+ * a command without scanning the string again. The GcodeParser runs all
+ * processors this way, string processors are wrapped in a
+ * {@link CommandProcessorAdapter}.
+ */
+public interface StructuredCommandProcessor extends CommandProcessor {
+    /**
+     * Given a command and the current state of a program returns a replacement
+     * list of commands.
+     * @param command Input gcode.
+     * @param state State of the gcode parser when the command will run.
+     * @return One or more gcode commands to replace the original command with,
+     *         a command which isn't changed should be returned as it is.
+     */
+    List<ParsedCommand> processCommand(ParsedCommand command, GcodeState state) throws GcodeParserException;
+
+    @Override
+    default List<String> processCommand(String command, GcodeState state) throws GcodeParserException {
+        List<ParsedCommand> commands = processCommand(new ParsedCommand(command), state);
+        List<String> ret = new ArrayList<>(commands.size());
+        for (ParsedCommand c : commands) {
+            ret.add(c.getCommand());
+        }
+        return ret;
+    }
+}
@@ -21,7 +21,15 @@
  */
 package com.geberl.gcodesender.gcode.processors;
 
+import java.util.Collections;
+import java.util.List;
+
+import com.geberl.gcodesender.gcode.GcodeState;
+import com.geberl.gcodesender.gcode.util.GcodeLineScanner;
+
 /**
+ * Removes the same text as the "\\s" pattern, with a scanner instead of the
+ * regular expression.
  *
  * @author wwinder
  */
@@ -29,4 +37,9 @@ public class WhitespaceProcessor extends PatternRemover {
     public WhitespaceProcessor() {
         super("\\s");
     }
+
+    @Override
+    public List<String> processCommand(String command, GcodeState state) {
+        return Collections.singletonList(GcodeLineScanner.removeWhitespace(command));
+    }
 }
\ No newline at end of file
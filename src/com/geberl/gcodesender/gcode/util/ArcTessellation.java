@@ -0,0 +1,98 @@
+/*
+    Copyright 2026 Stephan Geberl
+
+    This file is part of WireCutter/Mill GCode - Sender (WGS) (5 Axis-Version).
+    WGS is derived from UGS by Will Winder (2012 - 2018)
+
+    WGS is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    UGS is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with WGS.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.geberl.gcodesender.gcode.util;
+
+/**
+ * The shape of an arc split into segments: radius, start angle, sweep,
+ * direction and number of segments. It doesn't depend on the position of the
+ * arc, so arcs which only differ by a translation have equal tessellations
+ * and can share their offsets.
+ */
+public final class ArcTessellation {
+    public final double radius;
+    public final double startAngle;
+    public final double sweep;
+    public final boolean clockwise;
+    public final int numPoints;
+
+    public ArcTessellation(double radius, double startAngle, double sweep, boolean clockwise, int numPoints) {
+        this.radius = radius;
+        this.startAngle = startAngle;
+        this.sweep = sweep;
+        this.clockwise = clockwise;
+        this.numPoints = numPoints;
+    }
+
+    /**
+     * Calculates the offsets of the points from the center of the arc in the
+     * two axes of the plane, starting with the start point and without the end
+     * point. The offsets of point i are at index 2 * i and 2 * i + 1.
+     */
+    public double[] offsets() {
+        double[] offsets = new double[2 * numPoints];
+        for (int i = 0; i < numPoints; i++) {
+            double angle;
+            if (clockwise) {
+                angle = (startAngle - i * sweep/numPoints);
+            } else {
+                angle = (startAngle + i * sweep/numPoints);
+            }
+
+            if (angle >= Math.PI * 2) {
+                angle = angle - Math.PI * 2;
+            }
+
+            offsets[2 * i] = Math.cos(angle) * radius;
+            offsets[2 * i + 1] = Math.sin(angle) * radius;
+        }
+        return offsets;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof ArcTessellation)) {
+            return false;
+        }
+        ArcTessellation other = (ArcTessellation) o;
+        return Double.compare(radius, other.radius) == 0
+                && Double.compare(startAngle, other.startAngle) == 0
+                && Double.compare(sweep, other.sweep) == 0
+                && clockwise == other.clockwise
+                && numPoints == other.numPoints;
+    }
+
+    @Override
+    public int hashCode() {
+        int result = Double.hashCode(radius);
+        result = 31 * result + Double.hashCode(startAngle);
+        result = 31 * result + Double.hashCode(sweep);
+        result = 31 * result + (clockwise ? 1 : 0);
+        return 31 * result + numPoints;
+    }
+
+    @Override
+    public String toString() {
+        return "radius: " + radius + ", startAngle: " + startAngle + ", sweep: " + sweep
+                + ", clockwise: " + clockwise + ", numPoints: " + numPoints;
+    }
+}
@@ -179,6 +179,17 @@ public enum Code {
         Arrays.stream(Code.values())
                 .collect(Collectors.toMap(Code::toString, c -> c));
 
+    // G codes indexed by ten times their number, G38.2 is at 382.
+    private static final Code[] gCodeLookup = new Code[1000];
+    static {
+        for (Code c : Code.values()) {
+            String name = c.toString();
+            if (name.charAt(0) == 'G') {
+                gCodeLookup[(int) Math.round(Double.parseDouble(name.substring(1)) * 10)] = c;
+            }
+        }
+    }
+
     private final ModalGroup type;
     private final boolean nonModalMotionCode;
     private final boolean motionOptional;
@@ -240,4 +251,19 @@ public enum Code {
         Code c = codeLookup.get(type + rest);
         return c == null ? UNKNOWN : c;
     }
+
+    /**
+     * Lookup a G code from its number without creating a string.
+     * @param number the number of the code, like 1 or 38.2
+     * @return the enum value
+     */
+    public static Code lookupGCode(double number) {
+        double tenths = number * 10;
+        long index = Math.round(tenths);
+        if (index < 0 || index >= gCodeLookup.length || Math.abs(tenths - index) > 1e-6) {
+            return UNKNOWN;
+        }
+        Code c = gCodeLookup[(int) index];
+        return c == null ? UNKNOWN : c;
+    }
 }
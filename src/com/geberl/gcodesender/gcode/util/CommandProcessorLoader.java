@@ -19,6 +19,7 @@
 package com.geberl.gcodesender.gcode.util;
 
 import com.geberl.gcodesender.gcode.processors.ArcExpander;
+import com.geberl.gcodesender.gcode.processors.CollinearLineMerger;
 import com.geberl.gcodesender.gcode.processors.CommandLengthProcessor;
 import com.geberl.gcodesender.gcode.processors.CommandProcessor;
 import com.geberl.gcodesender.gcode.processors.CommentProcessor;
@@ -131,7 +132,8 @@ public class CommandProcessorLoader {
      *         "enabled": <enabled>,
      *         "optional": <optional>,
      *         "args": {
-     *             "segmentLengthMM": <double>
+     *             "segmentLengthMM": <double>,
+     *             "convertToLines": <boolean, optional, default true>
      *         }
      *     },{
      *         "name": "CommandLenghtProcessor",
@@ -173,6 +175,13 @@ public class CommandProcessorLoader {
      *         "args": {
      *             "duraion": <double>
      *         }
+     *     },{
+     *         "name": "CollinearLineMerger",
+     *         "enabled": <enabled>,
+     *         "optional": <optional>,
+     *         "args": {
+     *             "toleranceMM": <double>
+     *         }
      *     }
      *  ]
      */
@@ -193,7 +202,9 @@ public class CommandProcessorLoader {
             switch (pc.name) {
                 case "ArcExpander":
                     double length = pc.args.get("segmentLengthMM").getAsDouble();
-                    p = new ArcExpander(true, length);
+                    boolean convertToLines = !pc.args.has("convertToLines")
+                            || pc.args.get("convertToLines").getAsBoolean();
+                    p = new ArcExpander(convertToLines, length);
                     break;
                 case "CommandLengthProcessor":
                     int commandLength = pc.args.get("commandLength").getAsInt();
@@ -224,6 +235,10 @@ public class CommandProcessorLoader {
                     double duration = pc.args.get("duration").getAsDouble();
                     p = new SpindleOnDweller(duration);
                     break;
+                case "CollinearLineMerger":
+                    double tolerance = pc.args.get("toleranceMM").getAsDouble();
+                    p = new CollinearLineMerger(tolerance);
+                    break;
                 default:
                     throw new IllegalArgumentException("Unknown processor: " + pc.name);
             }
@@ -245,7 +260,9 @@ public class CommandProcessorLoader {
             switch (pc.name) {
                 case "ArcExpander":
                     double length = pc.args.get("segmentLengthMM").getAsDouble();
-                    p = new ArcExpander(true, length);
+                    boolean convertToLines = !pc.args.has("convertToLines")
+                            || pc.args.get("convertToLines").getAsBoolean();
+                    p = new ArcExpander(convertToLines, length);
                     break;
                 case "CommandLengthProcessor":
                     int commandLength = pc.args.get("commandLength").getAsInt();
@@ -276,6 +293,10 @@ public class CommandProcessorLoader {
                     int duration = pc.args.get("duration").getAsInt();
                     p = new SpindleOnDweller(duration);
                     break;
+                case "CollinearLineMerger":
+                    double tolerance = pc.args.get("toleranceMM").getAsDouble();
+                    p = new CollinearLineMerger(tolerance);
+                    break;
                 default:
                     throw new IllegalArgumentException("Unknown processor: " + pc.name);
             }
@@ -0,0 +1,246 @@
+/*
+    Copyright 2026 Stephan Geberl
+
+    This file is part of WireCutter/Mill GCode - Sender (WGS) (5 Axis-Version).
+    WGS is derived from UGS by Will Winder (2012 - 2018)
+
+    WGS is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    UGS is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with WGS.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.geberl.gcodesender.gcode.util;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+/**
+ * Rounds decimal numbers to a number of fractional digits without
+ * DecimalFormat or regular expressions. The results are the same as those of
+ * a DecimalFormat "#.##" (with the given number of '#' after the point) in
+ * the US locale: the digits of Double.toString rounded half even, a tie is
+ * decided by the exact double value, and no trailing zeros.
+ *
+ * All methods are static and keep no state, so they are thread safe.
+ */
+public class DecimalTruncator {
+    private static final long[] POW10 = {
+            1L, 10L, 100L, 1000L, 10000L, 100000L, 1000000L, 10000000L, 100000000L, 1000000000L,
+            10000000000L, 100000000000L, 1000000000000L, 10000000000000L, 100000000000000L,
+            1000000000000000L, 10000000000000000L, 100000000000000000L, 1000000000000000000L };
+
+    // Numbers with up to this many digits parse to a double closer to them
+    // than to any other number with as many digits.
+    private static final int EXACT_DIGITS = 15;
+
+    private static final BigDecimal HALF = new BigDecimal("0.5");
+
+    // Scaled doubles below this have an exact fraction.
+    private static final double MAX_SCALED = 4.0e15;
+
+    private DecimalTruncator() {
+    }
+
+    /**
+     * Rounds every number in the command with more than the given number of
+     * fractional digits, other numbers are kept as they are.
+     */
+    public static String truncate(String command, int decimals) {
+        char[] buf = command.toCharArray();
+        int len = truncate(buf, 0, buf.length, decimals);
+        if (len == buf.length) {
+            return command;
+        }
+        return new String(buf, 0, len);
+    }
+
+    /**
+     * Rounds every number in buf[off, off + len) with more than the given
+     * number of fractional digits. The numbers are rewritten in place, the
+     * rest of the buffer is moved to close the gaps.
+     *
+     * @return the new length of the text.
+     */
+    public static int truncate(char[] buf, int off, int len, int decimals) {
+        int end = off + len;
+        int w = off;
+        int i = off;
+        while (i < end) {
+            if (!isDigit(buf[i])) {
+                buf[w++] = buf[i++];
+                continue;
+            }
+
+            int start = i;
+            while (i < end && isDigit(buf[i])) {
+                i++;
+            }
+            int point = i;
+            if (point < end && buf[point] == '.') {
+                int fractionEnd = point + 1;
+                while (fractionEnd < end && isDigit(buf[fractionEnd])) {
+                    fractionEnd++;
+                }
+                if (fractionEnd - point - 1 > decimals) {
+                    w = round(buf, start, point, fractionEnd, decimals, w);
+                    i = fractionEnd;
+                    continue;
+                }
+            }
+
+            // Not enough fractional digits, the next ones start a new number.
+            while (start < point) {
+                buf[w++] = buf[start++];
+            }
+        }
+        return w - off;
+    }
+
+    /**
+     * Appends a value rounded to the given number of fractional digits.
+     */
+    public static StringBuilder append(StringBuilder sb, double value, int decimals) {
+        char[] digits = new char[32];
+        int len = format(value, decimals, digits, 0);
+        if (len < 0) {
+            return sb.append(formatExact(value, decimals));
+        }
+        return sb.append(digits, 0, len);
+    }
+
+    /**
+     * @return a value rounded to the given number of fractional digits.
+     */
+    public static String format(double value, int decimals) {
+        return append(new StringBuilder(), value, decimals).toString();
+    }
+
+    // Rounds the number buf[start, fractionEnd) with the point at index point
+    // and writes it at w, returns the index after it.
+    private static int round(char[] buf, int start, int point, int fractionEnd, int decimals, int w) {
+        int first = start;
+        while (first < point && buf[first] == '0') {
+            first++;
+        }
+
+        int discarded = fractionEnd - point - 1 - decimals;
+        if (point - first + fractionEnd - point - 1 <= EXACT_DIGITS) {
+            long kept = 0;
+            for (int i = first; i < point; i++) {
+                kept = kept * 10 + (buf[i] - '0');
+            }
+            for (int i = point + 1; i < fractionEnd - discarded; i++) {
+                kept = kept * 10 + (buf[i] - '0');
+            }
+            long rest = 0;
+            for (int i = fractionEnd - discarded; i < fractionEnd; i++) {
+                rest = rest * 10 + (buf[i] - '0');
+            }
+
+            long half = 5 * POW10[discarded - 1];
+            // A tie depends on the double the text parses to.
+            if (rest != half) {
+                return write(rest > half ? kept + 1 : kept, decimals, false, buf, w);
+            }
+        }
+
+        double value = Double.parseDouble(new String(buf, start, fractionEnd - start));
+        if (Double.isInfinite(value)) {
+            System.arraycopy(buf, start, buf, w, fractionEnd - start);
+            return w + fractionEnd - start;
+        }
+        String exact = formatExact(value, decimals);
+        exact.getChars(0, exact.length(), buf, w);
+        return w + exact.length();
+    }
+
+    // Writes a value to buf at pos, returns the index after it or -1 if the
+    // value can't be rounded without BigDecimal.
+    private static int format(double value, int decimals, char[] buf, int pos) {
+        if (decimals >= POW10.length || Double.isNaN(value) || Double.isInfinite(value)) {
+            return -1;
+        }
+
+        boolean negative = value < 0 || (value == 0 && 1 / value < 0);
+        double scaled = Math.abs(value) * POW10[decimals];
+        if (scaled >= MAX_SCALED) {
+            return -1;
+        }
+
+        // The product is rounded, it must be clearly on one side of the half.
+        double floor = Math.floor(scaled);
+        double fraction = scaled - floor;
+        if (Math.abs(fraction - 0.5) <= 4 * Math.ulp(scaled)) {
+            return -1;
+        }
+        return write((long) floor + (fraction > 0.5 ? 1 : 0), decimals, negative, buf, pos);
+    }
+
+    private static String formatExact(double value, int decimals) {
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+            return Double.toString(value);
+        }
+
+        boolean negative = value < 0 || (value == 0 && 1 / value < 0);
+        double abs = Math.abs(value);
+        BigDecimal digits = new BigDecimal(Double.toString(abs));
+        BigDecimal rounded = digits.setScale(decimals, RoundingMode.HALF_EVEN);
+        BigDecimal down = digits.setScale(decimals, RoundingMode.DOWN);
+        if (digits.subtract(down).scaleByPowerOfTen(decimals).compareTo(HALF) == 0) {
+            rounded = new BigDecimal(abs).setScale(decimals, RoundingMode.HALF_EVEN);
+        }
+
+        rounded = rounded.stripTrailingZeros();
+        if (rounded.scale() < 0) {
+            rounded = rounded.setScale(0);
+        }
+        String s = rounded.toPlainString();
+        return negative ? "-" + s : s;
+    }
+
+    // Writes unscaled / 10^scale to buf at pos, returns the index after it.
+    private static int write(long unscaled, int scale, boolean negative, char[] buf, int pos) {
+        while (scale > 0 && unscaled % 10 == 0) {
+            unscaled /= 10;
+            scale--;
+        }
+
+        if (negative) {
+            buf[pos++] = '-';
+        }
+
+        pos = writeDigits(unscaled / POW10[scale], 1, buf, pos);
+        if (scale > 0) {
+            buf[pos++] = '.';
+            pos = writeDigits(unscaled % POW10[scale], scale, buf, pos);
+        }
+        return pos;
+    }
+
+    // Writes the digits of a value padded with zeros to a minimum length.
+    private static int writeDigits(long value, int minDigits, char[] buf, int pos) {
+        int digits = 1;
+        while (digits < POW10.length && value >= POW10[digits]) {
+            digits++;
+        }
+        digits = Math.max(digits, minDigits);
+
+        for (int i = pos + digits - 1; i >= pos; i--) {
+            buf[i] = (char) ('0' + value % 10);
+            value /= 10;
+        }
+        return pos + digits;
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+}
@@ -0,0 +1,255 @@
+/*
+    Copyright 2026 Stephan Geberl
+
+    This file is part of WireCutter/Mill GCode - Sender (WGS) (5 Axis-Version).
+    WGS is derived from UGS by Will Winder (2012 - 2018)
+
+    WGS is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    UGS is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with WGS.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.geberl.gcodesender.gcode.util;
+
+/**
+ * Splits a gcode line into its code and comment in a single pass over the
+ * characters, without regular expressions. The results are the same as those
+ * of the GcodePreprocessorUtils.COMMENT pattern:
+ *
+ *  - "(...)" is removed up to the last ')' on the line,
+ *  - ";" and everything after it is removed, with the whitespace before it,
+ *  - a '%' at the end of the line is removed.
+ *
+ * The comment is the text of the first "(...)" or ";" comment, or "%".
+ * An instance keeps the results of the last line, it is not thread safe.
+ */
+public class GcodeLineScanner {
+    private static final String EMPTY = "";
+
+    private final StringBuilder code = new StringBuilder();
+    private final StringBuilder compact = new StringBuilder();
+
+    private String line = EMPTY;
+    private String codeString = EMPTY;
+    private String compactString = EMPTY;
+    private String comment = EMPTY;
+
+    /**
+     * Scans a line, replacing the results of the previous one.
+     * @return this, for chaining.
+     */
+    public GcodeLineScanner scan(String line) {
+        this.line = line;
+        code.setLength(0);
+        compact.setLength(0);
+        comment = null;
+        boolean removed = false;
+
+        int n = line.length();
+        int lastClose = line.lastIndexOf(')');
+        int i = 0;
+        while (i < n) {
+            char c = line.charAt(i);
+
+            if (comment == null && (c == '(' || c == ';' || c == '%')) {
+                comment = commentAt(line, i);
+            }
+
+            if (c == '(' && lastClose > i) {
+                int close = closingParenthesis(line, i, lastClose);
+                if (close > i) {
+                    removed = true;
+                    i = close + 1;
+                    continue;
+                }
+            }
+
+            if (c == ';' || isWhitespace(c)) {
+                int semicolon = i;
+                while (semicolon < n && isWhitespace(line.charAt(semicolon))) {
+                    semicolon++;
+                }
+
+                if (semicolon < n && line.charAt(semicolon) == ';') {
+                    if (comment == null) {
+                        comment = commentAt(line, semicolon);
+                    }
+                    removed = true;
+                    i = endOfLine(line, semicolon);
+                    continue;
+                }
+
+                // Not followed by a comment, keep the whitespace.
+                code.append(line, i, semicolon);
+                i = semicolon;
+                continue;
+            }
+
+            if (c == '%' && isEnd(line, i + 1)) {
+                removed = true;
+                i++;
+                continue;
+            }
+
+            code.append(c);
+            compact.append(c);
+            i++;
+        }
+
+        if (comment == null) {
+            comment = EMPTY;
+        }
+        codeString = removed ? code.toString() : line;
+        compactString = compact.length() == codeString.length() ? codeString : compact.toString();
+        return this;
+    }
+
+    /**
+     * @return the line without its comments.
+     */
+    public String getCode() {
+        return codeString;
+    }
+
+    /**
+     * @return the line without its comments and whitespace.
+     */
+    public String getCompactCode() {
+        return compactString;
+    }
+
+    /**
+     * @return the first comment of the line without the comment characters,
+     *         an empty string if there is none.
+     */
+    public String getComment() {
+        return comment;
+    }
+
+    public String getLine() {
+        return line;
+    }
+
+    /**
+     * Removes the comments from a line, see {@link #getCode()}.
+     */
+    public static String removeComment(String line) {
+        // Most lines don't have a comment.
+        if (!mayHaveComment(line)) {
+            return line;
+        }
+        return new GcodeLineScanner().scan(line).getCode();
+    }
+
+    /**
+     * Returns the first comment of a line, see {@link #getComment()}.
+     */
+    public static String parseComment(String line) {
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (c == '(' || c == ';' || c == '%') {
+                return commentAt(line, i);
+            }
+        }
+        return EMPTY;
+    }
+
+    /**
+     * Removes all whitespace characters matched by the "\s" pattern.
+     */
+    public static String removeWhitespace(String line) {
+        int n = line.length();
+        int i = 0;
+        while (i < n && !isWhitespace(line.charAt(i))) {
+            i++;
+        }
+        if (i == n) {
+            return line;
+        }
+
+        StringBuilder sb = new StringBuilder(n);
+        sb.append(line, 0, i);
+        for (; i < n; i++) {
+            char c = line.charAt(i);
+            if (!isWhitespace(c)) {
+                sb.append(c);
+            }
+        }
+        return sb.toString();
+    }
+
+    private static boolean mayHaveComment(String line) {
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (c == '(' || c == ';' || c == '%') {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // The comment starting with the comment character at index start.
+    private static String commentAt(String line, int start) {
+        char c = line.charAt(start);
+        if (c == '%') {
+            return "%";
+        }
+
+        int end = start + 1;
+        if (c == '(') {
+            // Up to the next parenthesis.
+            while (end < line.length() && line.charAt(end) != '(' && line.charAt(end) != ')') {
+                end++;
+            }
+        } else {
+            end = endOfLine(line, start);
+        }
+        return line.substring(start + 1, end);
+    }
+
+    // The last ')' after open which is on the same line, -1 if there is none.
+    private static int closingParenthesis(String line, int open, int lastClose) {
+        int end = endOfLine(line, open);
+        if (lastClose < end) {
+            return lastClose;
+        }
+        return line.lastIndexOf(')', end - 1);
+    }
+
+    // Index of the line terminator after start, or the length of the line.
+    private static int endOfLine(String line, int start) {
+        int i = start;
+        while (i < line.length() && !isLineTerminator(line.charAt(i))) {
+            i++;
+        }
+        return i;
+    }
+
+    // True at the end of the line or before a final line terminator.
+    private static boolean isEnd(String line, int i) {
+        int n = line.length();
+        if (i == n) {
+            return true;
+        }
+        if (i == n - 1) {
+            return isLineTerminator(line.charAt(i));
+        }
+        return i == n - 2 && line.charAt(i) == '\r' && line.charAt(i + 1) == '\n';
+    }
+
+    private static boolean isWhitespace(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+    }
+
+    private static boolean isLineTerminator(char c) {
+        return c == '\n' || c == '\r' || c == '\u0085' || c == '\u2028' || c == '\u2029';
+    }
+}
@@ -23,17 +23,19 @@ import java.io.File;
 import java.io.FileReader;
 import java.io.IOException;
 import java.util.Collection;
+import java.util.function.Supplier;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import org.apache.commons.lang3.StringUtils;
 
 import com.geberl.gcodesender.gcode.GcodeParser;
-import com.geberl.gcodesender.gcode.GcodePreprocessorUtils;
 import com.geberl.gcodesender.types.GcodeCommand;
+import com.geberl.gcodesender.utils.BinaryGcodeStreamWriter;
 import com.geberl.gcodesender.utils.GcodeStreamReader;
-import com.geberl.gcodesender.utils.GcodeStreamWriter;
 import com.geberl.gcodesender.utils.IGcodeStreamReader;
+import com.geberl.gcodesender.utils.IGcodeStreamWriter;
+import com.geberl.gcodesender.utils.MappedGcodeStreamReader;
 
 /**
  *
@@ -43,31 +45,62 @@ public class GcodeParserUtils {
     private static final Logger logger = Logger.getLogger(GcodeParserUtils.class.getName());
 
     /**
-     * Helper method to apply processors to gcode.
+     * Helper method to apply processors to gcode. The gcode state checkpoints
+     * of the output are written to {@link GcodeStateCheckpoints#getCheckpointFile}.
      */
     public static void processAndExport(GcodeParser gcp, File input, File output, Boolean isMillMode)
             throws IOException, GcodeParserException {
+        processAndExport(gcp, null, input, output, isMillMode);
+    }
+
+    /**
+     * Helper method to apply processors to gcode. A text file is preprocessed
+     * on all available processors, see {@link ParallelGcodePreprocessor}.
+     *
+     * @param parserFactory creates parsers with the same command processors as
+     *                      gcp for the worker threads, null to preprocess on
+     *                      the calling thread.
+     */
+    public static void processAndExport(GcodeParser gcp, Supplier<GcodeParser> parserFactory,
+            File input, File output, Boolean isMillMode)
+            throws IOException, GcodeParserException {
+        if (MappedGcodeStreamReader.isBinaryGcodeStream(input)) {
+            try (IGcodeStreamReader gsr = new MappedGcodeStreamReader(input)) {
+                processAndExportGcodeStream(gcp, gsr, output);
+                return;
+            } catch (GcodeStreamReader.NotGcodeStreamFile ex) {
+                // Fall back to the text formats.
+            }
+        }
+
         try(BufferedReader br = new BufferedReader(new FileReader(input))) {
             if (processAndExportGcodeStream(gcp, br, output)) {
                 return;
             }
         }
 
+        int parallelism = Runtime.getRuntime().availableProcessors();
         try(BufferedReader br = new BufferedReader(new FileReader(input))) {
-            processAndExportText(gcp, br, output, isMillMode);
+            if (parserFactory != null && parallelism > 1) {
+                processAndExportTextParallel(gcp, parserFactory, parallelism, br, output, isMillMode);
+            } else {
+                processAndExportText(gcp, br, output, isMillMode);
+            }
         }
     }
 
     /**
      * Common logic in processAndExport* methods.
      */
-    private static void write(GcodeParser gcp, GcodeStreamWriter gsw, String original, String command, String comment, int idx) throws GcodeParserException {
+    private static void write(GcodeParser gcp, IGcodeStreamWriter gsw, GcodeStateCheckpoints checkpoints,
+            String original, String command, String comment, int idx) throws GcodeParserException {
         if (idx % 100000 == 0) {
             logger.log(Level.FINE, "gcode processing line: " + idx);
         }
 
         if (StringUtils.isEmpty(command)) {
             gsw.addLine(original, command, comment, idx);
+            checkpoints.addRow(command, idx);
         }
         else {
             // Parse the gcode for the buffer.
@@ -75,9 +108,22 @@ public class GcodeParserUtils {
 
             for(String processedLine : lines) {
                 gsw.addLine(original, processedLine, comment, idx);
+                // Track the state of the processed rows, that is what the controller runs.
+                checkpoints.addRow(processedLine, idx);
             }
 
-            gcp.addCommand(command);
+            gcp.updateState(command);
+        }
+    }
+
+    /**
+     * Writes the commands the processors held back at the end of a program.
+     */
+    private static void flush(GcodeParser gcp, IGcodeStreamWriter gsw, GcodeStateCheckpoints checkpoints, int idx)
+            throws GcodeParserException {
+        for (String processedLine : gcp.flushCommandProcessors(gcp.getCurrentState())) {
+            gsw.addLine("", processedLine, "", idx);
+            checkpoints.addRow(processedLine, idx);
         }
     }
 
@@ -90,24 +136,29 @@ public class GcodeParserUtils {
 
         // Preprocess a GcodeStream file.
         try {
-            IGcodeStreamReader gsr = new GcodeStreamReader(input);
-            try (GcodeStreamWriter gsw = new GcodeStreamWriter(output)) {
-                int i = 0;
-                while (gsr.getNumRowsRemaining() > 0) {
-                    i++;
-                    GcodeCommand gc = gsr.getNextCommand();
-                    write(gcp, gsw, gc.getOriginalCommandString(), gc.getCommandString(), gc.getComment(), i);
-                }
-
-                // Done processing GcodeStream file.
-                return true;
-            }
+            processAndExportGcodeStream(gcp, new GcodeStreamReader(input), output);
+            return true;
         } catch (GcodeStreamReader.NotGcodeStreamFile ex) {
             // File exists, but isn't a stream reader. So go ahead and try parsing it as a raw gcode file.
         }
         return false;
     }
 
+    private static void processAndExportGcodeStream(GcodeParser gcp, IGcodeStreamReader gsr, File output)
+            throws IOException, GcodeParserException {
+        GcodeStateCheckpoints checkpoints = new GcodeStateCheckpoints(GcodeStateCheckpoints.DEFAULT_INTERVAL);
+        try (IGcodeStreamWriter gsw = new BinaryGcodeStreamWriter(output)) {
+            int i = 0;
+            while (gsr.getNumRowsRemaining() > 0) {
+                i++;
+                GcodeCommand gc = gsr.getNextCommand();
+                write(gcp, gsw, checkpoints, gc.getOriginalCommandString(), gc.getCommandString(), gc.getComment(), i);
+            }
+            flush(gcp, gsw, checkpoints, i);
+        }
+        checkpoints.write(GcodeStateCheckpoints.getCheckpointFile(output));
+    }
+
     /**
      * Attempts to read the input file in gcode-text format.
      * @return whether or not we succeed processing the file.
@@ -115,25 +166,44 @@ public class GcodeParserUtils {
     private static void processAndExportText(GcodeParser gcp, BufferedReader input, File output, Boolean isMillMode)
             throws IOException, GcodeParserException {
         // Preprocess a regular gcode file.
+        GcodeStateCheckpoints checkpoints = new GcodeStateCheckpoints(GcodeStateCheckpoints.DEFAULT_INTERVAL);
         try(BufferedReader br = input) {
-            try (GcodeStreamWriter gsw = new GcodeStreamWriter(output)) {
+            try (IGcodeStreamWriter gsw = new BinaryGcodeStreamWriter(output)) {
+                GcodeLineScanner scanner = new GcodeLineScanner();
                 int i = 0;
                 for(String line; (line = br.readLine()) != null; ) {
                     i++;
 
-                    String comment = GcodePreprocessorUtils.parseComment(line);
-                    String commentRemoved = GcodePreprocessorUtils.removeComment(line);
+                    scanner.scan(line);
+                    String comment = scanner.getComment();
+                    String commentRemoved = scanner.getCode();
 
                     if (isMillMode) { commentRemoved = transformToFiveAxis(commentRemoved); };
                     
-                    write(gcp, gsw, line, commentRemoved, comment, i);
+                    write(gcp, gsw, checkpoints, line, commentRemoved, comment, i);
                 }
+                flush(gcp, gsw, checkpoints, i);
             }
         }
+        checkpoints.write(GcodeStateCheckpoints.getCheckpointFile(output));
     }
     
     
-    private static String transformToFiveAxis(String line) {
+    /**
+     * Preprocesses a gcode-text file with the command processors running on
+     * several threads.
+     */
+    private static void processAndExportTextParallel(GcodeParser gcp, Supplier<GcodeParser> parserFactory,
+            int parallelism, BufferedReader input, File output, Boolean isMillMode)
+            throws IOException, GcodeParserException {
+        GcodeStateCheckpoints checkpoints = new GcodeStateCheckpoints(GcodeStateCheckpoints.DEFAULT_INTERVAL);
+        try (IGcodeStreamWriter gsw = new BinaryGcodeStreamWriter(output)) {
+            new ParallelGcodePreprocessor(gcp, parserFactory, parallelism).process(input, gsw, checkpoints, isMillMode);
+        }
+        checkpoints.write(GcodeStateCheckpoints.getCheckpointFile(output));
+    }
+
+    static String transformToFiveAxis(String line) {
 
 
         String tempCommand = line.toUpperCase();
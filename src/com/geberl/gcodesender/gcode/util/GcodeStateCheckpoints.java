@@ -0,0 +1,254 @@
+/*
+    Copyright 2026 Stephan Geberl
+
+    This file is part of WireCutter/Mill GCode - Sender (WGS) (5 Axis-Version).
+    WGS is derived from UGS by Will Winder (2012 - 2018)
+
+    WGS is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    UGS is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with WGS.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.geberl.gcodesender.gcode.util;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.commons.lang3.StringUtils;
+
+import com.geberl.gcodesender.gcode.GcodeParser;
+import com.geberl.gcodesender.gcode.GcodeState;
+import com.geberl.gcodesender.model.Position;
+import com.geberl.gcodesender.model.UnitUtils.Units;
+import com.geberl.gcodesender.types.GcodeCommand;
+import com.geberl.gcodesender.utils.MappedGcodeStreamReader;
+
+/**
+ * Gcode states of a processed gcode stream taken every interval rows. The state
+ * at any row is rebuilt from the closest checkpoint before it, so at most
+ * interval rows have to be parsed.
+ *
+ * The checkpoints are recorded while a file is preprocessed and stored in a
+ * side file next to the processed stream, see {@link #getCheckpointFile}.
+ */
+public class GcodeStateCheckpoints {
+    public static final int DEFAULT_INTERVAL = 1000;
+
+    private static final int FILE_MAGIC = 0x57475343; // "WGSC"
+    private static final int FILE_VERSION = 2;
+
+    private final int interval;
+    // Element i is the state before row i * interval.
+    private final List<GcodeState> states = new ArrayList<>();
+
+    // State after the rows added so far.
+    private GcodeState currentState = new GcodeState();
+    private int numRows = 0;
+
+    public GcodeStateCheckpoints(int interval) {
+        if (interval < 1) {
+            throw new IllegalArgumentException("Checkpoint interval must be positive: " + interval);
+        }
+        this.interval = interval;
+    }
+
+    /**
+     * Parses a whole processed stream and takes a checkpoint every interval rows.
+     */
+    public static GcodeStateCheckpoints build(MappedGcodeStreamReader reader, int interval)
+            throws IOException, GcodeParserException {
+        GcodeStateCheckpoints checkpoints = new GcodeStateCheckpoints(interval);
+        for (int row = 0; row < reader.getNumRows(); row++) {
+            GcodeCommand command = reader.getCommand(row);
+            checkpoints.addRow(command.getCommandString(), command.getCommandNumber());
+        }
+        return checkpoints;
+    }
+
+    /**
+     * Returns the side file used to store the checkpoints of a processed stream.
+     */
+    public static File getCheckpointFile(File processedFile) {
+        return new File(processedFile.getPath() + ".state");
+    }
+
+    /**
+     * Adds the next row of the processed stream, taking a checkpoint before it
+     * when one is due.
+     *
+     * @param command the processed command of the row
+     * @param line the line number of the command in the source file
+     */
+    public void addRow(String command, int line) throws GcodeParserException {
+        offer(numRows, currentState);
+        apply(command, line, currentState);
+        numRows++;
+    }
+
+    public int getInterval() {
+        return interval;
+    }
+
+    /**
+     * Stores the state before a row if the row is the next checkpoint. The
+     * state is copied, so the caller may keep modifying it.
+     *
+     * @param row index of the row which hasn't been applied to the state yet
+     * @param state the state before the row
+     */
+    public void offer(int row, GcodeState state) {
+        if (row == states.size() * interval) {
+            states.add(state.snapshot());
+        }
+    }
+
+    /**
+     * Returns the state before a row of the stream, created by parsing the rows
+     * following the closest checkpoint.
+     *
+     * @param reader the stream the checkpoints were taken from
+     * @param row index of the row
+     */
+    public GcodeState getStateAt(MappedGcodeStreamReader reader, int row)
+            throws IOException, GcodeParserException {
+        if (row < 0 || row > reader.getNumRows()) {
+            throw new IllegalArgumentException("Row " + row + " is outside of the stream (0-" + reader.getNumRows() + ")");
+        }
+
+        int checkpoint = Math.min(row / interval, states.size() - 1);
+        if (checkpoint < 0) {
+            throw new IllegalStateException("No checkpoints available.");
+        }
+
+        GcodeState state = states.get(checkpoint).snapshot();
+        for (int i = checkpoint * interval; i < row; i++) {
+            GcodeCommand command = reader.getCommand(i);
+            apply(command.getCommandString(), command.getCommandNumber(), state);
+        }
+        return state;
+    }
+
+    // The running states are owned by this class, so they are updated in place.
+    private static void apply(String gcode, int line, GcodeState state) throws GcodeParserException {
+        if (!StringUtils.isEmpty(gcode)) {
+            GcodeParser.applyCommand(gcode, line, state);
+        }
+    }
+
+    /**
+     * Writes the checkpoints to a file.
+     */
+    public void write(File file) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(file)))) {
+            out.writeInt(FILE_MAGIC);
+            out.writeInt(FILE_VERSION);
+            out.writeInt(interval);
+            out.writeInt(states.size());
+            for (GcodeState state : states) {
+                writeState(out, state);
+            }
+        }
+    }
+
+    /**
+     * Reads checkpoints written by {@link #write(File)}.
+     *
+     * @throws IOException if the file can't be read or is in another format.
+     */
+    public static GcodeStateCheckpoints read(File file) throws IOException {
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != FILE_MAGIC || in.readInt() != FILE_VERSION) {
+                throw new IOException("Not a gcode state checkpoint file: " + file);
+            }
+
+            GcodeStateCheckpoints checkpoints = new GcodeStateCheckpoints(in.readInt());
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                checkpoints.states.add(readState(in));
+            }
+            return checkpoints;
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Corrupt gcode state checkpoint file: " + file, e);
+        }
+    }
+
+    // Only the modal state needed to continue a program is stored.
+    private static void writeState(DataOutputStream out, GcodeState state) throws IOException {
+        writeCode(out, state.currentMotionMode);
+        writeCode(out, state.plane == null ? null : state.plane.code);
+        writeCode(out, state.distanceMode);
+        writeCode(out, state.arcDistanceMode);
+        writeCode(out, state.feedMode);
+        writeCode(out, state.units);
+        writeCode(out, state.offset);
+        out.writeDouble(state.speed);
+        out.writeDouble(state.spindleSpeed);
+        writeCode(out, state.spindleMode);
+
+        Position point = state.currentPoint;
+        out.writeBoolean(point != null);
+        if (point != null) {
+            out.writeDouble(point.x);
+            out.writeDouble(point.y);
+            out.writeDouble(point.z);
+            out.writeDouble(point.a);
+            out.writeDouble(point.b);
+            out.writeUTF(point.getUnits().name());
+        }
+    }
+
+    private static GcodeState readState(DataInputStream in) throws IOException {
+        GcodeState state = new GcodeState();
+        state.currentMotionMode = readCode(in);
+        state.plane = Plane.lookup(readCode(in));
+        state.distanceMode = readCode(in);
+        state.inAbsoluteMode = state.distanceMode != Code.G91;
+        state.arcDistanceMode = readCode(in);
+        state.inAbsoluteIJKMode = state.arcDistanceMode == Code.G90_1;
+        state.feedMode = readCode(in);
+        state.units = readCode(in);
+        state.isMetric = state.units != Code.G20;
+        state.offset = readCode(in);
+        state.speed = in.readDouble();
+        state.spindleSpeed = in.readDouble();
+        state.spindleMode = readCode(in);
+
+        state.currentPoint = null;
+        if (in.readBoolean()) {
+            double x = in.readDouble();
+            double y = in.readDouble();
+            double z = in.readDouble();
+            double a = in.readDouble();
+            double b = in.readDouble();
+            state.currentPoint = new Position(x, y, z, a, b, Units.valueOf(in.readUTF()));
+        }
+        return state;
+    }
+
+    private static void writeCode(DataOutputStream out, Code code) throws IOException {
+        out.writeUTF(code == null ? "" : code.name());
+    }
+
+    private static Code readCode(DataInputStream in) throws IOException {
+        String name = in.readUTF();
+        return name.isEmpty() ? null : Code.valueOf(name);
+    }
+}
@@ -18,8 +18,17 @@
  */
 package com.geberl.gcodesender.gcode.util;
 
+import java.text.DecimalFormat;
+import java.text.DecimalFormatSymbols;
+import java.text.NumberFormat;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
 import com.geberl.gcodesender.Utils;
+import com.geberl.gcodesender.gcode.GcodeState;
 import com.geberl.gcodesender.model.PartialPosition;
+import com.geberl.gcodesender.model.Position;
 import com.geberl.gcodesender.model.UnitUtils.Units;
 
 /**
@@ -268,4 +277,121 @@ public class GcodeUtils {
         return sb.toString();
     }
 
-}
\ No newline at end of file
+    /**
+     * Generates the commands which bring a controller into a gcode state, used
+     * to start a program in the middle. The modal state is set and the spindle
+     * or wire heat is switched on first, then the machine moves to the current
+     * point of the state in absolute mode. The distance and motion modes of
+     * the program are restored last.
+     *
+     * In mill mode the point is approached from above: the vertical axes (Y
+     * and A of the transformed program) rise to the higher of the current and
+     * the resumed height, the other axes are positioned and then the tool
+     * plunges to the resumed height.
+     *
+     * @param state the state to restore
+     * @param currentPosition work position of the machine, null if unknown
+     * @param millMode true for a program transformed for milling
+     * @return the commands to send before the rest of the program
+     */
+    public static List<String> generateStateRestoreCommands(GcodeState state, Position currentPosition,
+            boolean millMode) {
+        // New instance per call, DecimalFormat isn't thread safe.
+        NumberFormat format = new DecimalFormat("0.####", DecimalFormatSymbols.getInstance(Locale.US));
+        List<String> commands = new ArrayList<>();
+
+        StringBuilder modal = new StringBuilder();
+        modal.append(state.units);
+        if (state.plane != null) {
+            modal.append(state.plane.code);
+        }
+        if (state.offset != null) {
+            modal.append(state.offset);
+        }
+        if (state.feedMode != null) {
+            modal.append(state.feedMode);
+        }
+        if (state.arcDistanceMode != null) {
+            modal.append(state.arcDistanceMode);
+        }
+        modal.append(Code.G90);
+        commands.add(modal.toString());
+
+        if (state.spindleMode == Code.M3 || state.spindleMode == Code.M4) {
+            commands.add(state.spindleMode.name() + "S" + format.format(state.spindleSpeed));
+        }
+
+        Code lastMotion = null;
+        Position point = state.currentPoint;
+        if (point != null) {
+            // Without a known feed rate a G1 would be rejected.
+            lastMotion = state.speed > 0 ? Code.G1 : Code.G0;
+            StringBuilder move = new StringBuilder(lastMotion.name());
+            if (millMode) {
+                double y = point.y;
+                double a = point.a;
+                if (currentPosition != null) {
+                    Position current = currentPosition.getPositionIn(point.getUnits());
+                    y = higher(y, current.y);
+                    a = higher(a, current.a);
+                }
+                StringBuilder retract = new StringBuilder(Code.G0.name());
+                appendAxis(retract, 'Y', y, format);
+                appendAxis(retract, 'A', a, format);
+                addMove(commands, retract);
+
+                StringBuilder position = new StringBuilder(Code.G0.name());
+                appendAxis(position, 'X', point.x, format);
+                appendAxis(position, 'Z', point.z, format);
+                appendAxis(position, 'B', point.b, format);
+                addMove(commands, position);
+
+                appendAxis(move, 'Y', point.y, format);
+                appendAxis(move, 'A', point.a, format);
+            } else {
+                appendAxis(move, 'X', point.x, format);
+                appendAxis(move, 'Y', point.y, format);
+                appendAxis(move, 'Z', point.z, format);
+                appendAxis(move, 'A', point.a, format);
+                appendAxis(move, 'B', point.b, format);
+            }
+            if (state.speed > 0) {
+                move.append('F').append(format.format(state.speed));
+            }
+            commands.add(move.toString());
+        }
+
+        // Axis words following in the program use its modal motion.
+        StringBuilder restore = new StringBuilder();
+        if (!state.inAbsoluteMode) {
+            restore.append(state.distanceMode);
+        }
+        Code motion = state.currentMotionMode;
+        if (motion != lastMotion
+                && (motion == Code.G0 || motion == Code.G1 || motion == Code.G2 || motion == Code.G3)) {
+            restore.append(motion);
+        }
+        if (restore.length() > 0) {
+            commands.add(restore.toString());
+        }
+
+        return commands;
+    }
+
+    // Only adds a move with axis words.
+    private static void addMove(List<String> commands, StringBuilder move) {
+        if (move.length() > Code.G0.name().length()) {
+            commands.add(move.toString());
+        }
+    }
+
+    private static double higher(double resumed, double current) {
+        return Double.isNaN(current) ? resumed : Math.max(resumed, current);
+    }
+
+    private static void appendAxis(StringBuilder sb, char axis, double value, NumberFormat format) {
+        if (!Double.isNaN(value)) {
+            sb.append(axis).append(format.format(value));
+        }
+    }
+}
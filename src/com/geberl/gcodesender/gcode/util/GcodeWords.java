@@ -0,0 +1,323 @@
+/*
+    Copyright 2026 Stephan Geberl
+
+    This file is part of WireCutter/Mill GCode - Sender (WGS) (5 Axis-Version).
+    WGS is derived from UGS by Will Winder (2012 - 2018)
+
+    WGS is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    UGS is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with WGS.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.geberl.gcodesender.gcode.util;
+
+/**
+ * The words of one gcode line indexed by their letter. A line is split in a
+ * single pass over its characters and the numbers are parsed in place, so
+ * looking up a word doesn't allocate. An instance is meant to be reused for
+ * every line, it is not thread safe.
+ *
+ * Word boundaries follow GcodePreprocessorUtils.splitCommand: whitespace is
+ * ignored, a letter starts a word and digits, '.' and a leading '-' make up
+ * its number.
+ * When a letter is repeated the first value is kept, G codes are collected in
+ * the order they appear.
+ */
+public class GcodeWords {
+    private static final int LETTERS = 26;
+    private static final int MAX_G_CODES = 16;
+
+    // Exact powers of ten, a long mantissa divided by one of them is correctly rounded.
+    private static final double[] POWERS_OF_TEN = {
+        1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+        1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+
+    private final double[] values = new double[LETTERS];
+    private final int[] counts = new int[LETTERS];
+    private int present = 0;
+    private int numWords = 0;
+    private boolean systemCommand = false;
+
+    private final Code[] gCodes = new Code[MAX_G_CODES];
+    private int numGCodes = 0;
+
+    // The last M code of the line which switches the spindle.
+    private Code spindleCode = null;
+
+    /**
+     * Splits a command into the table, replacing the previous line.
+     * @return this, for chaining.
+     */
+    public GcodeWords parse(CharSequence command) {
+        clear();
+
+        int length = command.length();
+        // Special handling for GRBL system commands which will not be splitted
+        if (length > 0 && command.charAt(0) == '$') {
+            systemCommand = true;
+            numWords = 1;
+            return this;
+        }
+
+        int letter = -1;          // Index of the current word, -1 for none or a non A-Z letter.
+        boolean inWord = false;
+        boolean readNumeric = false;
+        int numberStart = -1;
+
+        for (int i = 0; i < length; i++) {
+            char c = command.charAt(i);
+            if (Character.isWhitespace(c)) continue;
+
+            // If the last character was numeric and this one isn't, then we hit a boundary.
+            if (readNumeric && !Character.isDigit(c) && c != '.') {
+                readNumeric = false;
+                addWord(letter, command, numberStart, i);
+                numberStart = -1;
+                inWord = false;
+
+                if (Character.isLetter(c)) {
+                    inWord = true;
+                    numWords++;
+                    letter = letterIndex(c);
+                }
+            }
+
+            else if (Character.isDigit(c) || c == '.' || c == '-') {
+                if (!inWord) {
+                    // A number without a letter is a word of its own.
+                    inWord = true;
+                    numWords++;
+                    letter = -1;
+                }
+                if (numberStart < 0) {
+                    numberStart = i;
+                }
+                readNumeric = true;
+            }
+
+            else if (Character.isLetter(c)) {
+                if (inWord) {
+                    // Two letters in a row don't make a valid word.
+                    letter = -1;
+                } else {
+                    inWord = true;
+                    numWords++;
+                    letter = letterIndex(c);
+                }
+            }
+        }
+
+        if (numberStart >= 0) {
+            addWord(letter, command, numberStart, length);
+        }
+        return this;
+    }
+
+    private void clear() {
+        present = 0;
+        numWords = 0;
+        numGCodes = 0;
+        spindleCode = null;
+        systemCommand = false;
+        for (int i = 0; i < LETTERS; i++) {
+            counts[i] = 0;
+        }
+    }
+
+    private static int letterIndex(char c) {
+        if (c >= 'a' && c <= 'z') {
+            return c - 'a';
+        }
+        if (c >= 'A' && c <= 'Z') {
+            return c - 'A';
+        }
+        return -1;
+    }
+
+    // Words without an A-Z letter are counted but not stored.
+    private void addWord(int letter, CharSequence command, int start, int end) {
+        if (letter < 0) {
+            return;
+        }
+
+        double value = parseNumber(command, start, end);
+        if (counts[letter]++ == 0) {
+            values[letter] = value;
+            present |= 1 << letter;
+        }
+
+        if (letter == 'G' - 'A' && !Double.isNaN(value)) {
+            addGCode(Code.lookupGCode(value));
+        } else if (letter == 'M' - 'A') {
+            addMCode(value);
+        }
+    }
+
+    // Only the codes which start or stop the spindle are kept.
+    private void addMCode(double value) {
+        if (value == 3) {
+            spindleCode = Code.M3;
+        } else if (value == 4) {
+            spindleCode = Code.M4;
+        } else if (value == 5 || value == 2 || value == 30) {
+            spindleCode = Code.M5;
+        }
+    }
+
+    /**
+     * Adds a G code to the line if it isn't already part of it, like the
+     * current motion mode for a line with only axis words.
+     */
+    public void addGCode(Code code) {
+        for (int i = 0; i < numGCodes; i++) {
+            if (gCodes[i] == code) {
+                return;
+            }
+        }
+        if (numGCodes < gCodes.length) {
+            gCodes[numGCodes++] = code;
+        }
+    }
+
+    /**
+     * Parses a decimal number, skipping the characters splitCommand drops.
+     * Returns NaN if it is malformed.
+     */
+    static double parseNumber(CharSequence s, int start, int end) {
+        boolean negative = false;
+        boolean seenDigit = false;
+        boolean seenDot = false;
+        long mantissa = 0;
+        int digits = 0;
+        int fractionDigits = 0;
+
+        int i = start;
+        if (s.charAt(i) == '-') {
+            negative = true;
+            i++;
+        }
+
+        for (; i < end; i++) {
+            char c = s.charAt(i);
+            if (c >= '0' && c <= '9') {
+                seenDigit = true;
+                if (mantissa == 0 && c == '0' && !seenDot) {
+                    continue;
+                }
+                if (++digits > 18) {
+                    return parseSlow(s, start, end);
+                }
+                mantissa = mantissa * 10 + (c - '0');
+                if (seenDot) {
+                    fractionDigits++;
+                }
+            } else if (c == '.') {
+                if (seenDot) {
+                    return Double.NaN;
+                }
+                seenDot = true;
+            } else if (c == '-') {
+                return Double.NaN;
+            }
+            // Other characters are skipped like splitCommand does.
+        }
+
+        if (!seenDigit) {
+            return Double.NaN;
+        }
+        if (mantissa > (1L << 53) || fractionDigits >= POWERS_OF_TEN.length) {
+            return parseSlow(s, start, end);
+        }
+
+        double value = mantissa / POWERS_OF_TEN[fractionDigits];
+        return negative ? -value : value;
+    }
+
+    private static double parseSlow(CharSequence s, int start, int end) {
+        StringBuilder sb = new StringBuilder(end - start);
+        for (int i = start; i < end; i++) {
+            char c = s.charAt(i);
+            if (Character.isDigit(c) || c == '.' || c == '-') {
+                sb.append(c);
+            }
+        }
+        try {
+            return Double.parseDouble(sb.toString());
+        } catch (NumberFormatException e) {
+            return Double.NaN;
+        }
+    }
+
+    /**
+     * @return true if the line has no words.
+     */
+    public boolean isEmpty() {
+        return numWords == 0;
+    }
+
+    /**
+     * @return true for a GRBL system command like "$H", which has no words.
+     */
+    public boolean isSystemCommand() {
+        return systemCommand;
+    }
+
+    /**
+     * @return true if the letter is followed by a number on the line.
+     */
+    public boolean has(char letter) {
+        int index = letterIndex(letter);
+        return index >= 0 && (present & (1 << index)) != 0;
+    }
+
+    /**
+     * @return the number of the first word with the letter, NaN if there is
+     *         no such word or its number is malformed.
+     */
+    public double get(char letter) {
+        return has(letter) ? values[letterIndex(letter)] : Double.NaN;
+    }
+
+    /**
+     * @return how often the letter appears with a number on the line.
+     */
+    public int count(char letter) {
+        int index = letterIndex(letter);
+        return index < 0 ? 0 : counts[index];
+    }
+
+    /**
+     * @return true if any of X, Y, Z, A or B is on the line.
+     */
+    public boolean hasAxisWords() {
+        return has('X') || has('Y') || has('Z') || has('A') || has('B');
+    }
+
+    /**
+     * @return M3, M4 or M5 if the line starts or stops the spindle, a program
+     *         end stops it too. Null if the line doesn't change it.
+     */
+    public Code getSpindleCode() {
+        return spindleCode;
+    }
+
+    public int getNumGCodes() {
+        return numGCodes;
+    }
+
+    /**
+     * @return the G code at an index, in the order they appear on the line.
+     */
+    public Code getGCode(int index) {
+        return gCodes[index];
+    }
+}
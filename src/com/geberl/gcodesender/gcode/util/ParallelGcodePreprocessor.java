@@ -0,0 +1,304 @@
+/*
+    Copyright 2026 Stephan Geberl
+
+    This file is part of WireCutter/Mill GCode - Sender (WGS) (5 Axis-Version).
+    WGS is derived from UGS by Will Winder (2012 - 2018)
+
+    WGS is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    UGS is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with WGS.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.geberl.gcodesender.gcode.util;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.apache.commons.lang3.StringUtils;
+
+import com.geberl.gcodesender.gcode.GcodeParser;
+import com.geberl.gcodesender.gcode.GcodeState;
+import com.geberl.gcodesender.utils.IGcodeStreamWriter;
+
+/**
+ * Preprocesses a gcode text file on several threads. The file is read in
+ * chunks of lines and every chunk goes through four steps:
+ *
+ *  1. a worker splits the comments off the lines,
+ *  2. the lines are applied to the parser in file order, which gives the
+ *     modal state at the start of the chunk and keeps the file stats,
+ *  3. a worker runs the command processors over the chunk, starting from
+ *     that state,
+ *  4. the processed lines are written in file order.
+ *
+ * Only steps 2 and 4 are sequential and neither of them runs a processor.
+ * The result is the same as preprocessing the file line by line, except that
+ * buffering processors are flushed at the end of every chunk.
+ *
+ * Every worker uses a parser of its own, so the command processors don't need
+ * to be thread safe. They must not keep state from one line to the next, all
+ * they know about earlier lines has to come from the GcodeState. Buffering
+ * processors are the exception, they start over after every flush.
+ */
+public class ParallelGcodePreprocessor {
+    private static final Logger logger = Logger.getLogger(ParallelGcodePreprocessor.class.getName());
+
+    public static final int CHUNK_SIZE = 4096;
+
+    // Chunks waiting to be written for each worker, limits the memory used.
+    private static final int CHUNKS_PER_WORKER = 4;
+
+    private static final AtomicInteger poolNumber = new AtomicInteger();
+
+    private final GcodeParser gcp;
+    private final Supplier<GcodeParser> parserFactory;
+    private final int parallelism;
+
+    private final Queue<GcodeParser> idleParsers = new ConcurrentLinkedQueue<>();
+
+    /**
+     * @param gcp parser which is updated with every line like the sequential
+     *            preprocessing does, its processors aren't used.
+     * @param parserFactory creates the parsers of the workers, configured with
+     *                      the same command processors as gcp.
+     * @param parallelism number of worker threads.
+     */
+    public ParallelGcodePreprocessor(GcodeParser gcp, Supplier<GcodeParser> parserFactory, int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Parallelism must be positive: " + parallelism);
+        }
+        this.gcp = gcp;
+        this.parserFactory = parserFactory;
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * A block of consecutive lines, the arrays are filled in by the steps.
+     */
+    private static class Chunk {
+        final int firstLine;
+        final String[] lines;
+        final String[] comments;
+        final String[] commands;
+        final List<Collection<String>> processed;
+
+        GcodeState startState;
+        Future<?> split;
+        Future<?> preprocessed;
+
+        Chunk(int firstLine, String[] lines) {
+            this.firstLine = firstLine;
+            this.lines = lines;
+            this.comments = new String[lines.length];
+            this.commands = new String[lines.length];
+            this.processed = new ArrayList<>(Collections.nCopies(lines.length, null));
+        }
+    }
+
+    /**
+     * Preprocesses the lines of input and writes the result to gsw.
+     */
+    public void process(BufferedReader input, IGcodeStreamWriter gsw, GcodeStateCheckpoints checkpoints,
+            boolean isMillMode) throws IOException, GcodeParserException {
+        int number = poolNumber.incrementAndGet();
+        AtomicInteger threadNumber = new AtomicInteger();
+        ExecutorService pool = Executors.newFixedThreadPool(parallelism, r -> {
+            Thread t = new Thread(r, "GcodePreprocessor-" + number + "-" + threadNumber.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+
+        Deque<Chunk> toScan = new ArrayDeque<>();
+        Deque<Chunk> toWrite = new ArrayDeque<>();
+        try {
+            int lineNumber = 0;
+            Chunk chunk;
+            while ((chunk = readChunk(input, lineNumber + 1)) != null) {
+                lineNumber += chunk.lines.length;
+
+                Chunk c = chunk;
+                c.split = pool.submit(() -> split(c, isMillMode));
+                toScan.add(c);
+
+                // Give the workers some chunks to split before waiting for one.
+                if (toScan.size() > parallelism) {
+                    toWrite.add(scan(toScan.poll(), pool));
+                }
+                while (toWrite.size() > parallelism * CHUNKS_PER_WORKER) {
+                    write(toWrite.poll(), gsw, checkpoints);
+                }
+            }
+
+            while (!toScan.isEmpty()) {
+                toWrite.add(scan(toScan.poll(), pool));
+            }
+            while (!toWrite.isEmpty()) {
+                write(toWrite.poll(), gsw, checkpoints);
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private static Chunk readChunk(BufferedReader input, int firstLine) throws IOException {
+        String[] lines = new String[CHUNK_SIZE];
+        int count = 0;
+        for (String line; count < lines.length && (line = input.readLine()) != null; ) {
+            lines[count++] = line;
+        }
+
+        if (count == 0) {
+            return null;
+        }
+        if (count < lines.length) {
+            String[] rest = new String[count];
+            System.arraycopy(lines, 0, rest, 0, count);
+            lines = rest;
+        }
+        return new Chunk(firstLine, lines);
+    }
+
+    /**
+     * Step 1, splits the comments off the lines.
+     */
+    private static void split(Chunk chunk, boolean isMillMode) {
+        GcodeLineScanner scanner = new GcodeLineScanner();
+        for (int i = 0; i < chunk.lines.length; i++) {
+            scanner.scan(chunk.lines[i]);
+            chunk.comments[i] = scanner.getComment();
+
+            String commentRemoved = scanner.getCode();
+            if (isMillMode) {
+                commentRemoved = GcodeParserUtils.transformToFiveAxis(commentRemoved);
+            }
+            chunk.commands[i] = commentRemoved;
+        }
+    }
+
+    /**
+     * Step 2, applies the lines to the parser and hands the chunk to a worker
+     * for preprocessing.
+     */
+    private Chunk scan(Chunk chunk, ExecutorService pool) throws IOException, GcodeParserException {
+        await(chunk.split);
+
+        chunk.startState = gcp.getCurrentState().snapshot();
+        for (String command : chunk.commands) {
+            if (!StringUtils.isEmpty(command)) {
+                gcp.updateState(command);
+            }
+        }
+
+        chunk.preprocessed = pool.submit(() -> {
+            preprocess(chunk);
+            return null;
+        });
+        return chunk;
+    }
+
+    /**
+     * Step 3, runs the command processors over the lines of a chunk.
+     */
+    private void preprocess(Chunk chunk) throws GcodeParserException {
+        GcodeParser parser = idleParsers.poll();
+        if (parser == null) {
+            parser = parserFactory.get();
+        }
+
+        try {
+            GcodeState state = chunk.startState;
+            int last = -1;
+            for (int i = 0; i < chunk.commands.length; i++) {
+                String command = chunk.commands[i];
+                if (!StringUtils.isEmpty(command)) {
+                    chunk.processed.set(i, parser.preprocessCommand(command, state));
+                    // Follow the state of the parser, see GcodeParser.updateState.
+                    GcodeParser.applyCommand(command, ++state.commandNumber, state);
+                    last = i;
+                }
+            }
+
+            // The parser is used for other chunks, nothing may be held back.
+            if (last >= 0) {
+                chunk.processed.get(last).addAll(parser.flushCommandProcessors(state));
+            }
+        } finally {
+            idleParsers.offer(parser);
+        }
+    }
+
+    /**
+     * Step 4, writes the processed lines of a chunk.
+     */
+    private static void write(Chunk chunk, IGcodeStreamWriter gsw, GcodeStateCheckpoints checkpoints)
+            throws IOException, GcodeParserException {
+        await(chunk.preprocessed);
+
+        for (int i = 0; i < chunk.lines.length; i++) {
+            int idx = chunk.firstLine + i;
+            if (idx % 100000 == 0) {
+                logger.log(Level.FINE, "gcode processing line: " + idx);
+            }
+
+            String command = chunk.commands[i];
+            if (StringUtils.isEmpty(command)) {
+                gsw.addLine(chunk.lines[i], command, chunk.comments[i], idx);
+                checkpoints.addRow(command, idx);
+            } else {
+                for (String processedLine : chunk.processed.get(i)) {
+                    gsw.addLine(chunk.lines[i], processedLine, chunk.comments[i], idx);
+                    checkpoints.addRow(processedLine, idx);
+                }
+            }
+        }
+    }
+
+    // Rethrows the exception of a worker in the calling thread.
+    private static void await(Future<?> future) throws IOException, GcodeParserException {
+        try {
+            future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while preprocessing gcode.", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof GcodeParserException) {
+                throw (GcodeParserException) cause;
+            }
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IOException(cause);
+        }
+    }
+}
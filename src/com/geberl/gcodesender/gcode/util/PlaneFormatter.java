@@ -62,6 +62,30 @@ public class PlaneFormatter {
         }
     }
     
+    /**
+     * @return the letter of the arc center offset along axis0.
+     */
+    public char axis0Offset() {
+        switch(plane) {
+            case XY: return 'I';
+            case ZX: return 'K';
+            case YZ: return 'J';
+            default: throw new IllegalArgumentException("Plane not supported: " + plane);
+        }
+    }
+
+    /**
+     * @return the letter of the arc center offset along axis1.
+     */
+    public char axis1Offset() {
+        switch(plane) {
+            case XY: return 'J';
+            case ZX: return 'I';
+            case YZ: return 'K';
+            default: throw new IllegalArgumentException("Plane not supported: " + plane);
+        }
+    }
+
     public void setAxis0(Position point, double value) {
         switch(plane) {
             case XY: point.x = value; return;
@@ -38,6 +38,7 @@ public class ControllerStatus {
     private final AccessoryStates accessoryStates;
     private final ControllerState state;
     private final UnitUtils.Units feedSpeedUnits;
+    private final BufferState bufferState;
 
     /**
      * Baseline constructor. This data should always be present. Represents the
@@ -59,6 +60,17 @@ public class ControllerStatus {
                             Position workCoord, Double feedSpeed, UnitUtils.Units feedSpeedUnits, Double spindleSpeed,
                             OverridePercents overrides, Position workCoordinateOffset,
                             EnabledPins pins, AccessoryStates states) {
+        this(stateString, machineModeString, state, machineCoord, workCoord, feedSpeed, feedSpeedUnits, spindleSpeed,
+                overrides, workCoordinateOffset, pins, states, null);
+    }
+
+    /**
+     * Additional parameters including the buffer state (GRBL 1.1 "Bf:" field)
+     */
+    public ControllerStatus(String stateString, String machineModeString, ControllerState state, Position machineCoord,
+                            Position workCoord, Double feedSpeed, UnitUtils.Units feedSpeedUnits, Double spindleSpeed,
+                            OverridePercents overrides, Position workCoordinateOffset,
+                            EnabledPins pins, AccessoryStates states, BufferState bufferState) {
         this.stateString = stateString;
         this.machineModeString = machineModeString;
         this.state = state;
@@ -71,6 +83,7 @@ public class ControllerStatus {
         this.overrides = overrides;
         this.pins = pins;
         this.accessoryStates = states;
+        this.bufferState = bufferState;
     }
 
     /**
@@ -126,6 +139,14 @@ public class ControllerStatus {
         return feedSpeedUnits;
     }
 
+    /**
+     * Returns the available planner blocks and serial buffer bytes, null if
+     * the controller didn't report them.
+     */
+    public BufferState getBufferState() {
+        return bufferState;
+    }
+
     public static class EnabledPins {
         final public boolean X;
         final public boolean Y;
@@ -164,6 +185,15 @@ public class ControllerStatus {
         }
     }
 
+    public static class BufferState {
+        final public int plannerBlocksAvailable;
+        final public int rxBytesAvailable;
+        public BufferState(int plannerBlocksAvailable, int rxBytesAvailable) {
+            this.plannerBlocksAvailable = plannerBlocksAvailable;
+            this.rxBytesAvailable = rxBytesAvailable;
+        }
+    }
+
     public static class OverridePercents {
         final public int feed;
         final public int rapid;
@@ -39,6 +39,7 @@ public class ControllerStatusBuilder {
     private Position workCoordinateOffset = Position.ZERO;
     private ControllerStatus.EnabledPins pins = null;
     private ControllerStatus.AccessoryStates states = null;
+    private ControllerStatus.BufferState bufferState = null;
 
     public static ControllerStatusBuilder newInstance(ControllerStatus controllerStatus) {
         ControllerStatusBuilder controllerStatusBuilder = new ControllerStatusBuilder();
@@ -54,7 +55,8 @@ public class ControllerStatusBuilder {
                 .setOverrides(controllerStatus.getOverrides())
                 .setWorkCoordinateOffset(controllerStatus.getWorkCoordinateOffset())
                 .setPins(controllerStatus.getEnabledPins())
-                .setStates(controllerStatus.getAccessoryStates());
+                .setStates(controllerStatus.getAccessoryStates())
+                .setBufferState(controllerStatus.getBufferState());
         }
         return controllerStatusBuilder;
     }
@@ -119,7 +121,12 @@ public class ControllerStatusBuilder {
         return this;
     }
 
+    public ControllerStatusBuilder setBufferState(ControllerStatus.BufferState bufferState) {
+        this.bufferState = bufferState;
+        return this;
+    }
+
     public ControllerStatus build() {
-        return new ControllerStatus(stateString, machineModeString, state, machineCoord, workCoord, feedSpeed, feedSpeedUnits, spindleSpeed, overrides, workCoordinateOffset, pins, states);
+        return new ControllerStatus(stateString, machineModeString, state, machineCoord, workCoord, feedSpeed, feedSpeedUnits, spindleSpeed, overrides, workCoordinateOffset, pins, states, bufferState);
     }
 }
\ No newline at end of file
@@ -82,6 +82,13 @@ public interface BackendAPI extends BackendAPIReadOnly {
     void offsetTool(String axis, double offset, UnitUtils.Units units) throws Exception;
 
     void send() throws Exception;
+
+    /**
+     * Streams the processed gcode file starting at a row, the gcode state of
+     * the program at that row is restored before the first streamed row.
+     * @param row index of the first row to stream in the processed file
+     */
+    void sendFromRow(int row) throws Exception;
     void pauseResume() throws Exception;
     void cancel() throws Exception;
     void returnToZero() throws Exception;
@@ -27,6 +27,7 @@ import com.geberl.gcodesender.gcode.GcodeState;
 import com.geberl.gcodesender.gcode.GcodeStats;
 import com.geberl.gcodesender.gcode.processors.*;
 import com.geberl.gcodesender.gcode.util.GcodeParserUtils;
+import com.geberl.gcodesender.gcode.util.GcodeStateCheckpoints;
 import com.geberl.gcodesender.listeners.*;
 import com.geberl.gcodesender.model.UGSEvent.ControlState;
 import com.geberl.gcodesender.model.UGSEvent.EventType;
@@ -46,6 +47,7 @@ import javax.script.ScriptException;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FileReader;
+import java.io.IOException;
 import java.nio.charset.Charset;
 import java.util.*;
 import java.util.logging.Level;
@@ -76,6 +78,8 @@ public class GUIBackend implements BackendAPI, ControllerListener, SettingChange
     // GUI State
     private File gcodeFile = null;
     private File processedGcodeFile = null;
+    private GcodeStateCheckpoints processedGcodeCheckpoints = null;
+    private File processedGcodeCheckpointsFile = null;
     private File tempDir = null;
     private String firmware = null;
     private Boolean isMillMode = false;
@@ -169,21 +173,34 @@ public class GUIBackend implements BackendAPI, ControllerListener, SettingChange
      */
     protected void preprocessAndExportToFile(GcodeParser gcp, File input, File output) throws Exception {
         logger.log(Level.INFO, "Preprocessing {0} to {1}", new Object[]{input.getCanonicalPath(), output.getCanonicalPath()});
-        GcodeParserUtils.processAndExport(gcp, input, output, this.isMillMode);
+        GcodeParserUtils.processAndExport(gcp, this::createGcodeParser, input, output, this.isMillMode);
     }
 
     private void initGcodeParser() {
         // Configure gcode parser.
         gcp.resetCommandProcessors();
+        addCommandProcessors(gcp);
+    }
+
+    /**
+     * Creates a parser with the same processors as the gcode parser, each
+     * preprocessing thread needs its own processor instances.
+     */
+    private GcodeParser createGcodeParser() {
+        GcodeParser parser = new GcodeParser();
+        addCommandProcessors(parser);
+        return parser;
+    }
 
+    private void addCommandProcessors(GcodeParser parser) {
         try {
             List<CommandProcessor> processors = FirmwareUtils.getParserFor(firmware, settings).orElse(null);
             for (CommandProcessor p : processors) {
-                gcp.addCommandProcessor(p);
+                parser.addCommandProcessor(p);
             }
         }
         catch (Exception e) {
-            initializeWithFallbackProcessors(gcp);
+            initializeWithFallbackProcessors(parser);
         }
     }
 
@@ -531,17 +548,82 @@ public class GUIBackend implements BackendAPI, ControllerListener, SettingChange
         // Note: there is a divide by zero error in the timer because it uses
         //       the rowsValueLabel that was just reset.
 
+        IGcodeStreamReader stream = null;
         try {
             // This will throw an exception and prevent that other stuff from
             // happening (clearing the table before its ready for clearing.
             this.controller.isReadyToStreamFile();
-            this.controller.queueStream(new GcodeStreamReader(this.processedGcodeFile));
+            // Read ahead on a background thread so slow storage can't starve the controller.
+            stream = new PrefetchingGcodeStreamReader(new MappedGcodeStreamReader(this.processedGcodeFile));
+            this.controller.queueStream(stream);
             this.controller.beginStreaming();
         } catch (Exception e) {
+            closeStream(stream);
             this.sendUGSEvent(new UGSEvent(ControlState.COMM_IDLE), false);
             throw new Exception("Error starting Stream", e);
         }
     }
+
+    @Override
+    public void sendFromRow(int row) throws Exception {
+        logger.log(Level.INFO, "Sending gcode file from row " + row + ".");
+
+        // The prefetching stream closes the reader once it is built.
+        IGcodeStreamReader stream = null;
+        try {
+            this.controller.isReadyToStreamFile();
+            if (this.processedGcodeFile == null) {
+                throw new Exception("There is no processed gcode file to send.");
+            }
+
+            MappedGcodeStreamReader reader = new MappedGcodeStreamReader(this.processedGcodeFile);
+            stream = reader;
+            GcodeState startState = getProcessedGcodeCheckpoints(reader).getStateAt(reader, row);
+            reader.seek(row);
+
+            stream = new PrefetchingGcodeStreamReader(reader);
+            this.controller.queueStream(stream);
+            this.controller.beginStreaming(startState, this.isMillMode);
+        } catch (Exception e) {
+            closeStream(stream);
+            this.sendUGSEvent(new UGSEvent(ControlState.COMM_IDLE), false);
+            throw new Exception("Error starting Stream", e);
+        }
+    }
+
+    /**
+     * Releases a stream which couldn't be started, the mapped file stays
+     * locked on Windows until it is closed.
+     */
+    private static void closeStream(IGcodeStreamReader stream) {
+        if (stream == null) {
+            return;
+        }
+        try {
+            stream.close();
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "Couldn't close the gcode stream.", e);
+        }
+    }
+
+    /**
+     * Returns the state checkpoints of the processed file. They are read from
+     * the side file written while preprocessing, or created from the processed
+     * file if it is missing.
+     */
+    private GcodeStateCheckpoints getProcessedGcodeCheckpoints(MappedGcodeStreamReader reader) throws Exception {
+        if (this.processedGcodeCheckpoints == null || this.processedGcodeCheckpointsFile != this.processedGcodeFile) {
+            File checkpointFile = GcodeStateCheckpoints.getCheckpointFile(this.processedGcodeFile);
+            try {
+                this.processedGcodeCheckpoints = GcodeStateCheckpoints.read(checkpointFile);
+            } catch (IOException e) {
+                logger.log(Level.INFO, "Couldn't read gcode state checkpoints, parsing " + this.processedGcodeFile);
+                this.processedGcodeCheckpoints = GcodeStateCheckpoints.build(reader, GcodeStateCheckpoints.DEFAULT_INTERVAL);
+            }
+            this.processedGcodeCheckpointsFile = this.processedGcodeFile;
+        }
+        return this.processedGcodeCheckpoints;
+    }
     
     @Override
     public long getNumRows() {
@@ -819,6 +901,9 @@ public class GUIBackend implements BackendAPI, ControllerListener, SettingChange
             controller.setSingleStepMode(settings.isSingleStepMode());
             controller.setStatusUpdatesEnabled(settings.isStatusUpdatesEnabled());
             controller.setStatusUpdateRate(settings.getStatusUpdateRate());
+            controller.setPipelinedMode(settings.isPipelinedMode());
+            controller.setPlannerAwareMode(settings.isPlannerAwareMode());
+            controller.setSenderThreadEnabled(settings.isSenderThreadEnabled());
         } catch (Exception ex) {
             StringBuilder message = new StringBuilder()
                     .append("There was a problem setting one or more of these controller features")
@@ -829,7 +914,10 @@ public class GUIBackend implements BackendAPI, ControllerListener, SettingChange
                     .append("remove all whitespace").append(NEW_LINE)
                     .append("convert arcs to lines").append(NEW_LINE)
                     .append("status updates").append(NEW_LINE)
-                    .append("status update rate");
+                    .append("status update rate").append(NEW_LINE)
+                    .append("sender thread").append(NEW_LINE)
+                    .append("planner aware streaming").append(NEW_LINE)
+                    .append("pipelined streaming");
             
             throw new Exception(message.toString(), ex);
         }
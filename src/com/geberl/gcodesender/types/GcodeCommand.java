@@ -25,6 +25,7 @@ import org.apache.commons.lang3.builder.ToStringBuilder;
 import org.apache.commons.lang3.builder.ToStringStyle;
 
 import com.geberl.gcodesender.gcode.GcodePreprocessorUtils;
+import com.geberl.gcodesender.utils.CommUtils;
 
 import java.util.concurrent.atomic.AtomicInteger;
 
@@ -54,6 +55,12 @@ public class GcodeCommand {
     private boolean isTemporaryParserModalChange = false;
     private Integer id = ID_GENERATOR.getAndIncrement();
 
+    /**
+     * The command encoded the way it is written to the controller, cached so
+     * streaming doesn't need to encode it. Transient to keep it out of equals.
+     */
+    private transient byte[] wireBytes;
+
     public GcodeCommand(String command) {
         this(command, -1);
     }
@@ -88,6 +95,14 @@ public class GcodeCommand {
     /** Setters. */
     public void setCommand(String command) {
         this.command = command;
+        this.wireBytes = null;
+    }
+
+    /**
+     * Sets the pre-encoded command, see {@link #getWireBytes()}.
+     */
+    public void setWireBytes(byte[] wireBytes) {
+        this.wireBytes = wireBytes;
     }
     
     public void setCommandNumber(int i) {
@@ -116,6 +131,18 @@ public class GcodeCommand {
         return this.command;
     }
 
+    /**
+     * Returns the trimmed command as ASCII bytes without line terminator, the
+     * length of this array is what the command occupies in the controller
+     * buffer. Encoded on first use unless it was set while reading the stream.
+     */
+    public byte[] getWireBytes() {
+        if (this.wireBytes == null) {
+            this.wireBytes = CommUtils.toWireBytes(this.command);
+        }
+        return this.wireBytes;
+    }
+
     public String getOriginalCommandString() {
         return this.originalCommand == null ? this.command : this.originalCommand;
     }
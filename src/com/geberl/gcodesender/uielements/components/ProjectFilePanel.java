@@ -34,6 +34,7 @@ import com.geberl.gcodesender.types.GcodeCommand;
 import com.geberl.gcodesender.utils.FirmwareUtils;
 import com.geberl.gcodesender.utils.GUIHelpers;
 import com.geberl.gcodesender.utils.GcodeStreamReader;
+import com.geberl.gcodesender.utils.MappedGcodeStreamReader;
 import com.geberl.gcodesender.utils.IGcodeStreamReader;
 import com.geberl.gcodesender.utils.Settings;
 import com.geberl.gcodesender.utils.SettingsFactory;
@@ -456,7 +457,7 @@ public class ProjectFilePanel extends JPanel implements UGSEventListener, Contro
                 case FILE_LOADED:
                     processedGcodeFile = evt.getFile();
                     try {
-                        try (IGcodeStreamReader gsr = new GcodeStreamReader(backend.getProcessedGcodeFile())) {
+                        try (IGcodeStreamReader gsr = new MappedGcodeStreamReader(backend.getProcessedGcodeFile())) {
                             resetSentRowLabels(gsr.getNumRows());
                         }
                     } catch (IOException | GcodeStreamReader.NotGcodeStreamFile ex) {}
@@ -44,13 +44,18 @@ public class ProgramSettingsPanel extends AbstractSettingsPanel {
 	private String[] connectionModeString = {
             ConnectionDriver.JSSC.getPrettyName(),
             ConnectionDriver.JSERIALCOMM.getPrettyName(),
-            ConnectionDriver.TCP.getPrettyName()
+            ConnectionDriver.TCP.getPrettyName(),
+            ConnectionDriver.TCP_NIO.getPrettyName(),
+            ConnectionDriver.SIMULATOR.getPrettyName()
             };
 	
 	private final Checkbox verboseConsoleOutput = new Checkbox("Show verbose output");
     private final Checkbox singleStepMode = new Checkbox("Enable single step mode");
     private final Checkbox statusPollingEnabled = new Checkbox("Enable status polling");
     private final Spinner statusPollRate = new Spinner("Status poll rate (ms)", new SpinnerNumberModel(1, 1, null, 100));
+    private final Checkbox senderThreadEnabled = new Checkbox("Send commands from a dedicated thread");
+    private final Checkbox plannerAwareMode = new Checkbox("Limit sent commands to free planner blocks");
+    private final Checkbox pipelinedMode = new Checkbox("Pipelined streaming for TCP and Wi-Fi links");
     private final ComboBox connectionDriver = new ComboBox("Connection driver  ", connectionModeString);
 
     private final JLabel workspaceDirectoryLabel = new JLabel("");
@@ -70,7 +75,7 @@ public class ProgramSettingsPanel extends AbstractSettingsPanel {
     }
  
     @Override
-    public int getHeight() { return 230; }
+    public int getHeight() { return 305; }
     @Override
 	public int getWidth() { return 335; }
     
@@ -93,14 +98,23 @@ public class ProgramSettingsPanel extends AbstractSettingsPanel {
         statusPollRate.setBounds(28,80,200,26);
         add(statusPollRate);
         
-        connectionDriver.setBounds(5,120,300,26);
+        senderThreadEnabled.setBounds(5,110,320,24);
+        add(senderThreadEnabled);
+
+        plannerAwareMode.setBounds(5,135,320,24);
+        add(plannerAwareMode);
+
+        pipelinedMode.setBounds(5,160,320,24);
+        add(pipelinedMode);
+
+        connectionDriver.setBounds(5,195,300,26);
         add(connectionDriver);
 
-        workspaceDirectoryBrowseButton.setBounds(5,155,330,30);
+        workspaceDirectoryBrowseButton.setBounds(5,230,330,30);
         workspaceDirectoryBrowseButton.setAction(createBrowseDirectoryAction());
         add(workspaceDirectoryBrowseButton);
         
-        workspaceDirectoryLabel.setBounds(5,190,400,26);
+        workspaceDirectoryLabel.setBounds(5,265,400,26);
         add(workspaceDirectoryLabel);
         
         workspaceDirectoryLabel.setText(settings.getWorkspaceDirectory());
@@ -114,6 +128,9 @@ public class ProgramSettingsPanel extends AbstractSettingsPanel {
                 "Enable single step mode: Turns on single step mode, this is very slow." + "\n" +
                 "Enable status polling: Turns on status polling for firmware if supported." + "\n" +
                 "Status poll rate: The rate in milliseconds that status requests are sent at." + "\n" +
+                "Send commands from a dedicated thread: Writes to the controller don't delay reading its responses." + "\n" +
+                "Limit sent commands to free planner blocks: Keeps fewer commands queued in the controller, a feed hold stops sooner." + "\n" +
+                "Pipelined streaming: Sends ahead of the acknowledgements on links with a long round trip, like TCP to a Wi-Fi bridge." + "\n" +
                 "Connection driver: Driver for the communication with the arduino." + "\n" +
         		"Saved starting point: x, y , z." + "\n" +
         		"Save height: Z value for savely change x and y." + "\n" +
@@ -127,11 +144,18 @@ public class ProgramSettingsPanel extends AbstractSettingsPanel {
         settings.setSingleStepMode(singleStepMode.getValue());
         settings.setStatusUpdatesEnabled(statusPollingEnabled.getValue());
         settings.setStatusUpdateRate((int)statusPollRate.getValue());
+        settings.setPipelinedMode(pipelinedMode.getValue());
+        settings.setPlannerAwareMode(plannerAwareMode.getValue());
+        settings.setSenderThreadEnabled(senderThreadEnabled.getValue());
         
          if (connectionDriver.getSelectedItem().equals(ConnectionDriver.JSERIALCOMM.getPrettyName())) {
             settings.setConnectionDriver(ConnectionDriver.JSERIALCOMM);
         } else if (connectionDriver.getSelectedItem().equals(ConnectionDriver.TCP.getPrettyName())) {
             settings.setConnectionDriver(ConnectionDriver.TCP);
+        } else if (connectionDriver.getSelectedItem().equals(ConnectionDriver.TCP_NIO.getPrettyName())) {
+            settings.setConnectionDriver(ConnectionDriver.TCP_NIO);
+        } else if (connectionDriver.getSelectedItem().equals(ConnectionDriver.SIMULATOR.getPrettyName())) {
+            settings.setConnectionDriver(ConnectionDriver.SIMULATOR);
         } else {
             settings.setConnectionDriver(ConnectionDriver.JSSC);
         }
@@ -155,6 +179,9 @@ public class ProgramSettingsPanel extends AbstractSettingsPanel {
         singleStepMode.setSelected(s.isSingleStepMode());
         statusPollingEnabled.setSelected(s.isStatusUpdatesEnabled());
         statusPollRate.setValue(s.getStatusUpdateRate());
+        pipelinedMode.setSelected(s.isPipelinedMode());
+        plannerAwareMode.setSelected(s.isPlannerAwareMode());
+        senderThreadEnabled.setSelected(s.isSenderThreadEnabled());
         connectionDriver.setSelectedItem(s.getConnectionDriver().getPrettyName());
         workspaceDirectoryLabel.setText(settings.getWorkspaceDirectory());
         
@@ -0,0 +1,109 @@
+/*
+    Copyright 2026 Stephan Geberl
+
+    This file is part of WireCutter/Mill GCode - Sender (WGS) (5 Axis-Version).
+    WGS is derived from UGS by Will Winder (2012 - 2018)
+
+    WGS is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    UGS is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with WGS.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.geberl.gcodesender.utils;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Writes a gcode stream in the binary format read by
+ * {@link MappedGcodeStreamReader}. The offset of every row is collected while
+ * writing and stored as an index at the end of the file.
+ */
+public class BinaryGcodeStreamWriter extends GcodeStream implements IGcodeStreamWriter {
+    private final File file;
+    private final DataOutputStream out;
+    private long position = 0;
+    private long[] rowOffsets = new long[1024];
+    private int lineCount = 0;
+
+    public BinaryGcodeStreamWriter(File f) throws FileNotFoundException {
+        file = f;
+        out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(f), 1 << 16));
+
+        // The row count and index offset are filled in on close.
+        try {
+            out.write(BINARY_MAGIC);
+            out.writeInt(BINARY_VERSION);
+            out.writeInt(0);
+            out.writeLong(0);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        position = BINARY_HEADER_SIZE;
+    }
+
+    @Override
+    public void addLine(String original, String processed, String comment, int commandNumber) {
+        if (    (original != null && original.trim().contains("\n")) ||
+                (processed != null && processed.trim().contains("\n")) ||
+                (comment != null && comment.trim().contains("\n"))) {
+            throw new IllegalArgumentException("Cannot include newlines in gcode stream.");
+        }
+
+        if (lineCount == rowOffsets.length) {
+            rowOffsets = Arrays.copyOf(rowOffsets, rowOffsets.length * 2);
+        }
+        rowOffsets[lineCount++] = position;
+
+        try {
+            out.writeInt(commandNumber);
+            position += 4;
+            writeString(processed);
+            writeString(original);
+            writeString(comment);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void writeString(String str) throws IOException {
+        byte[] bytes = str == null ? new byte[0] : str.trim().getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+        position += 4 + bytes.length;
+    }
+
+    @Override
+    public void close() throws IOException {
+        long indexOffset = position;
+        try {
+            for (int i = 0; i < lineCount; i++) {
+                out.writeLong(rowOffsets[i]);
+            }
+        } finally {
+            out.close();
+        }
+
+        try (RandomAccessFile raw = new RandomAccessFile(file, "rw")) {
+            raw.seek(BINARY_ROW_COUNT_OFFSET);
+            raw.writeInt(lineCount);
+            raw.writeLong(indexOffset);
+        }
+    }
+}
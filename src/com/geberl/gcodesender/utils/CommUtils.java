@@ -31,6 +31,40 @@ import com.geberl.gcodesender.types.GcodeCommand;
  */
 public class CommUtils {
     
+    /**
+     * Encodes a command as it is written to the controller: trimmed, ASCII and
+     * without a line terminator. Characters outside ASCII become '?'.
+     */
+    static public byte[] toWireBytes(String command) {
+        if (command == null) {
+            return new byte[0];
+        }
+
+        int start = 0;
+        int end = command.length();
+        while (start < end && command.charAt(start) <= ' ') {
+            start++;
+        }
+        while (end > start && command.charAt(end - 1) <= ' ') {
+            end--;
+        }
+
+        byte[] bytes = new byte[end - start];
+        for (int i = start; i < end; i++) {
+            char c = command.charAt(i);
+            bytes[i - start] = c < 0x80 ? (byte) c : (byte) '?';
+        }
+        return bytes;
+    }
+
+    /** 
+     * Checks if there is enough room in the GRBL buffer for a command with
+     * the given number of bytes, excluding the line terminator.
+     */
+    static public boolean checkRoomInBuffer(int sentBuffer, int commandLength, int bufferSize) {
+        return sentBuffer + commandLength + 1 <= bufferSize;
+    }
+
     /** 
      * Checks if there is enough room in the GRBL buffer for nextCommand.
      */
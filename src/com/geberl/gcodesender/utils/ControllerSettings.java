@@ -22,6 +22,7 @@
 package com.geberl.gcodesender.utils;
 
 
+import com.geberl.gcodesender.GrblCommunicator;
 import com.geberl.gcodesender.GrblController;
 import com.geberl.gcodesender.IController;
 import com.geberl.gcodesender.LoopBackCommunicator;
@@ -102,6 +103,9 @@ public class ControllerSettings {
      *     "name": "GRBL",
      *     "args": null
      * }
+     *
+     * With "commandBufferCapacity" and "activeCommandCapacity" in the args the
+     * GRBL communicator queues commands in preallocated ring buffers.
      */
     public IController getController() {
         //String controllerName = controllerConfig.get("name").getAsString();
@@ -109,6 +113,12 @@ public class ControllerSettings {
         CONTROLLER controller = CONTROLLER.fromString(controllerName);
         switch (controller) {
             case GRBL:
+                if (hasArg("commandBufferCapacity") && hasArg("activeCommandCapacity")) {
+                    JsonObject args = this.Controller.args.getAsJsonObject();
+                    return new GrblController(new GrblCommunicator(
+                            args.get("commandBufferCapacity").getAsInt(),
+                            args.get("activeCommandCapacity").getAsInt()));
+                }
                 return new GrblController();
             case LOOPBACK:
                 return new GrblController(new LoopBackCommunicator());
@@ -118,6 +128,11 @@ public class ControllerSettings {
                 throw new AssertionError(controller.name());
         }
     }
+
+    private boolean hasArg(String name) {
+        JsonElement args = this.Controller.args;
+        return args != null && args.isJsonObject() && args.getAsJsonObject().has(name);
+    }
     
     /**
      * Get the list of processors from the settings in the order they should be
@@ -43,4 +43,14 @@ public abstract class GcodeStream {
     protected final String separator = "++";
     protected final Pattern splitPattern = Pattern.compile(Pattern.quote(separator));
     protected final String metaPrefix = "gsw_meta:";
+
+    // Binary format: header, one record per row and an index of record offsets.
+    //   header: magic, int version, int row count, long index offset
+    //   record: int command number, then processed, original and comment as
+    //           int length + UTF-8 bytes
+    //   index:  long record offset per row
+    protected static final byte[] BINARY_MAGIC = {'W', 'G', 'S', 'B'};
+    protected static final int BINARY_VERSION = 1;
+    protected static final int BINARY_HEADER_SIZE = 20;
+    protected static final int BINARY_ROW_COUNT_OFFSET = 8;
 }
@@ -96,12 +96,15 @@ public class GcodeStreamReader extends GcodeStream implements IGcodeStreamReader
             throw new IOException("Corrupt data found while processing gcode stream: " + line);
         }
         numRowsRemaining--;
-        return new GcodeCommand(
+        GcodeCommand command = new GcodeCommand(
                 nextLine[COL_PROCESSED_COMMAND],
                 nextLine[COL_ORIGINAL_COMMAND],
                 nextLine[COL_COMMENT],
                 Integer.parseInt(nextLine[COL_COMMAND_NUMBER]),
                 false);
+        // Encode while reading so the streaming loop only copies bytes.
+        command.setWireBytes(CommUtils.toWireBytes(nextLine[COL_PROCESSED_COMMAND]));
+        return command;
     }
 
     @Override
@@ -26,7 +26,6 @@
  */
 package com.geberl.gcodesender.utils;
 
-import java.io.Closeable;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
@@ -39,7 +38,7 @@ import com.geberl.gcodesender.types.GcodeCommand;
  *
  * @author wwinder
  */
-public class GcodeStreamWriter extends GcodeStream implements Closeable {
+public class GcodeStreamWriter extends GcodeStream implements IGcodeStreamWriter {
     File file;
     PrintWriter fileWriter;
     Integer lineCount = 0;
@@ -83,6 +82,7 @@ public class GcodeStreamWriter extends GcodeStream implements Closeable {
         fileWriter.append("\n");
     }
 
+    @Override
     public void addLine(String original, String processed, String comment, int commandNumber) {
         if (    (original != null && original.trim().contains("\n")) || 
                 (processed != null && processed.trim().contains("\n")) ||
@@ -0,0 +1,38 @@
+/*
+    Copyright 2026 Stephan Geberl
+
+    This file is part of WireCutter/Mill GCode - Sender (WGS) (5 Axis-Version).
+    WGS is derived from UGS by Will Winder (2012 - 2018)
+
+    WGS is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    UGS is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with WGS.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.geberl.gcodesender.utils;
+
+import java.io.Closeable;
+
+/**
+ * Writes preprocessed gcode commands to a gcode stream file.
+ */
+public interface IGcodeStreamWriter extends Closeable {
+
+    /**
+     * Appends a row to the stream.
+     *
+     * @param original the command as it was in the source file
+     * @param processed the command to send to the controller
+     * @param comment the comment of the source line
+     * @param commandNumber the line number in the source file
+     */
+    void addLine(String original, String processed, String comment, int commandNumber);
+}
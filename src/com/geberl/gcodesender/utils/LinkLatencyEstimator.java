@@ -0,0 +1,156 @@
+/*
+    Copyright 2026 Stephan Geberl
+
+    This file is part of WireCutter/Mill GCode - Sender (WGS) (5 Axis-Version).
+    WGS is derived from UGS by Will Winder (2012 - 2018)
+
+    WGS is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    UGS is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with WGS.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.geberl.gcodesender.utils;
+
+/**
+ * Estimates how many bytes can be sent to the controller ahead of its
+ * acknowledgements, for links with a long round trip like TCP bridges.
+ *
+ * The round trip of the link is measured with the status query, which the
+ * controller answers right away instead of queueing it behind the commands
+ * in its receive buffer. The lowest of the recent round trips is used. The
+ * drain rate is the number of acknowledged bytes per second over the recent
+ * acknowledgements, they have to span at least two round trips.
+ *
+ * The acknowledgements of the bytes consumed during the last half round trip
+ * are still on their way back, so about rate * rtt / 2 of the unacknowledged
+ * bytes have already left the receive buffer. That many bytes, scaled down by
+ * a safety factor, can be sent on top of the receive buffer size. Bytes the
+ * controller consumes while new bytes are on their way aren't counted, it
+ * may have nothing left to consume when a batch arrives at once.
+ *
+ * The methods are synchronized, they are called by the receiving, polling
+ * and sending threads.
+ */
+public class LinkLatencyEstimator {
+    private static final int RTT_SAMPLES = 16;
+    private static final int ACK_SAMPLES = 256;
+
+    // Fraction of the estimated bytes which is sent ahead.
+    private static final double SAFETY_FACTOR = 0.5;
+
+    // A status query which isn't answered within this time is dropped.
+    private static final long STATUS_TIMEOUT_NANOS = 5_000_000_000L;
+
+    private final long[] rttNanos = new long[RTT_SAMPLES];
+    private int rttCount = 0;
+    private int rttNext = 0;
+    private long statusSentNanos = -1;
+
+    // Time and total of acknowledged bytes for the recent acknowledgements.
+    private final long[] ackNanos = new long[ACK_SAMPLES];
+    private final long[] ackTotals = new long[ACK_SAMPLES];
+    private int ackCount = 0;
+    private int ackNext = 0;
+    private long ackedBytes = 0;
+
+    /**
+     * Clears all measurements, called when a new connection is made.
+     */
+    public synchronized void reset() {
+        rttCount = 0;
+        rttNext = 0;
+        statusSentNanos = -1;
+        ackCount = 0;
+        ackNext = 0;
+        ackedBytes = 0;
+    }
+
+    /**
+     * Records that a status query was sent. Only one query is measured at a
+     * time, a query sent before the previous one was answered is ignored.
+     */
+    public synchronized void statusRequested(long nanoTime) {
+        if (statusSentNanos < 0 || nanoTime - statusSentNanos > STATUS_TIMEOUT_NANOS) {
+            statusSentNanos = nanoTime;
+        }
+    }
+
+    /**
+     * Records that a status report was received.
+     */
+    public synchronized void statusReceived(long nanoTime) {
+        if (statusSentNanos < 0) {
+            return;
+        }
+        rttNanos[rttNext] = nanoTime - statusSentNanos;
+        rttNext = (rttNext + 1) % RTT_SAMPLES;
+        rttCount = Math.min(rttCount + 1, RTT_SAMPLES);
+        statusSentNanos = -1;
+    }
+
+    /**
+     * Records that the controller acknowledged a command.
+     *
+     * @param bytes the number of bytes the command took in the receive buffer.
+     */
+    public synchronized void acknowledged(int bytes, long nanoTime) {
+        ackedBytes += bytes;
+        ackNanos[ackNext] = nanoTime;
+        ackTotals[ackNext] = ackedBytes;
+        ackNext = (ackNext + 1) % ACK_SAMPLES;
+        ackCount = Math.min(ackCount + 1, ACK_SAMPLES);
+    }
+
+    /**
+     * @return the lowest recent round trip in nanoseconds, or -1 if none was
+     *         measured.
+     */
+    public synchronized long getRoundTripNanos() {
+        if (rttCount == 0) {
+            return -1;
+        }
+        long min = Long.MAX_VALUE;
+        for (int i = 0; i < rttCount; i++) {
+            min = Math.min(min, rttNanos[i]);
+        }
+        return min;
+    }
+
+    /**
+     * Returns the number of bytes which can be sent on top of the receive
+     * buffer, at most the buffer size. It is 0 until the round trip and the
+     * drain rate are known, and while the controller hasn't acknowledged
+     * anything for a round trip, for example while the planner is full.
+     *
+     * @param bufferSize the size of the controller receive buffer.
+     */
+    public synchronized int getSendAhead(int bufferSize, long nanoTime) {
+        long rtt = getRoundTripNanos();
+        if (rtt <= 0 || ackCount < 2) {
+            return 0;
+        }
+
+        int newest = (ackNext + ACK_SAMPLES - 1) % ACK_SAMPLES;
+        int oldest = ackCount < ACK_SAMPLES ? 0 : ackNext;
+        if (nanoTime - ackNanos[newest] > rtt) {
+            return 0;
+        }
+
+        // A burst of acknowledgements says nothing about the rate, it has to
+        // be measured over a few round trips.
+        long span = ackNanos[newest] - ackNanos[oldest];
+        if (span < 2 * rtt) {
+            return 0;
+        }
+        double bytesPerNano = (double) (ackTotals[newest] - ackTotals[oldest]) / span;
+        return (int) Math.min(bufferSize, bytesPerNano * rtt / 2 * SAFETY_FACTOR);
+    }
+}
@@ -0,0 +1,256 @@
+/*
+    Copyright 2026 Stephan Geberl
+
+    This file is part of WireCutter/Mill GCode - Sender (WGS) (5 Axis-Version).
+    WGS is derived from UGS by Will Winder (2012 - 2018)
+
+    WGS is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    UGS is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with WGS.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.geberl.gcodesender.utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import com.geberl.gcodesender.types.GcodeCommand;
+import com.geberl.gcodesender.utils.GcodeStreamReader.NotGcodeStreamFile;
+
+/**
+ * Reads a gcode stream written by {@link BinaryGcodeStreamWriter}. The file is
+ * memory mapped, the row count comes from the header and any row can be read
+ * directly through the index, so opening a large file doesn't read it.
+ *
+ * The file is mapped in windows of up to 1 GiB, one for the rows and one for
+ * the index, so the stream may be larger than a single mapping. A single row
+ * must fit into a window.
+ *
+ * Not thread safe, the reader should only be used by one thread at a time.
+ */
+public class MappedGcodeStreamReader extends GcodeStream implements IGcodeStreamReader {
+    private static final byte[] EMPTY = new byte[0];
+
+    // Largest part of the file mapped at once.
+    private static final int MAX_WINDOW_SIZE = 1 << 30;
+
+    private final RandomAccessFile file;
+    private final FileChannel channel;
+    private final long size;
+    private final Window rows = new Window();
+    private final Window index = new Window();
+    private boolean closed = false;
+
+    private final int numRows;
+    private final long indexOffset;
+    private int nextRow = 0;
+
+    /**
+     * A mapped part of the file, moved when a read falls outside of it.
+     */
+    private final class Window {
+        private MappedByteBuffer buffer;
+        private long start;
+
+        /**
+         * Returns the mapping positioned at an offset of the file, with at
+         * least length bytes remaining.
+         */
+        MappedByteBuffer at(long offset, int length) throws IOException {
+            if (offset < 0 || length < 0 || offset + length > size) {
+                throw new IOException("Read outside of the gcode stream at " + offset);
+            }
+            if (buffer == null || offset < start || offset + length > start + buffer.capacity()) {
+                long windowSize = Math.min(MAX_WINDOW_SIZE, size - offset);
+                if (length > windowSize) {
+                    throw new IOException("Gcode stream row is larger than " + MAX_WINDOW_SIZE + " bytes.");
+                }
+                buffer = channel.map(FileChannel.MapMode.READ_ONLY, offset, windowSize);
+                start = offset;
+            }
+            buffer.position((int) (offset - start));
+            return buffer;
+        }
+    }
+
+    public MappedGcodeStreamReader(File f) throws NotGcodeStreamFile, IOException {
+        file = new RandomAccessFile(f, "r");
+        channel = file.getChannel();
+        try {
+            size = channel.size();
+            if (size < BINARY_HEADER_SIZE) {
+                throw new NotGcodeStreamFile();
+            }
+
+            MappedByteBuffer header = rows.at(0, BINARY_HEADER_SIZE);
+            byte[] magic = new byte[BINARY_MAGIC.length];
+            header.get(magic);
+            if (!Arrays.equals(magic, BINARY_MAGIC)) {
+                throw new NotGcodeStreamFile();
+            }
+
+            int version = header.getInt();
+            if (version != BINARY_VERSION) {
+                throw new IOException("Unsupported gcode stream version " + version + ": " + f);
+            }
+
+            numRows = header.getInt();
+            indexOffset = header.getLong();
+            if (numRows < 0 || indexOffset < BINARY_HEADER_SIZE
+                    || indexOffset + 8L * numRows > size) {
+                throw new IOException("Corrupt gcode stream index: " + f);
+            }
+        } catch (NotGcodeStreamFile | IOException | RuntimeException e) {
+            channel.close();
+            file.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Returns true if the file starts with the binary gcode stream header.
+     */
+    public static boolean isBinaryGcodeStream(File f) {
+        try (RandomAccessFile raf = new RandomAccessFile(f, "r")) {
+            byte[] magic = new byte[BINARY_MAGIC.length];
+            return raf.length() >= BINARY_HEADER_SIZE
+                    && raf.read(magic) == magic.length
+                    && Arrays.equals(magic, BINARY_MAGIC);
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    @Override
+    public boolean ready() {
+        return getNumRowsRemaining() > 0;
+    }
+
+    @Override
+    public int getNumRows() {
+        return numRows;
+    }
+
+    @Override
+    public int getNumRowsRemaining() {
+        return numRows - nextRow;
+    }
+
+    /**
+     * Returns the index of the row returned by the next call to getNextCommand.
+     */
+    public int getPosition() {
+        return nextRow;
+    }
+
+    /**
+     * Moves the stream to a row, following calls to getNextCommand continue
+     * from there.
+     *
+     * @param row index of the next row to read, numRows moves to the end.
+     */
+    public void seek(int row) {
+        if (row < 0 || row > numRows) {
+            throw new IllegalArgumentException("Row " + row + " is outside of the stream (0-" + numRows + ")");
+        }
+        nextRow = row;
+    }
+
+    @Override
+    public GcodeCommand getNextCommand() throws IOException {
+        if (nextRow >= numRows) return null;
+
+        GcodeCommand command = getCommand(nextRow);
+        nextRow++;
+        return command;
+    }
+
+    /**
+     * Reads a row without moving the stream.
+     *
+     * @param row index of the row in the stream
+     * @throws IOException if the row data is corrupt
+     */
+    public GcodeCommand getCommand(int row) throws IOException {
+        if (closed) {
+            throw new IOException("Gcode stream is closed.");
+        }
+        if (row < 0 || row >= numRows) {
+            throw new IllegalArgumentException("Row " + row + " is outside of the stream (0-" + numRows + ")");
+        }
+
+        try {
+            long offset = index.at(indexOffset + 8L * row, 8).getLong();
+
+            int commandNumber = rows.at(offset, 4).getInt();
+            offset += 4;
+            byte[] processed = readBytes(offset);
+            offset += 4 + processed.length;
+            byte[] original = readBytes(offset);
+            offset += 4 + original.length;
+            byte[] comment = readBytes(offset);
+
+            String processedString = new String(processed, StandardCharsets.UTF_8);
+            GcodeCommand command = new GcodeCommand(processedString, toString(original), toString(comment),
+                    commandNumber, false);
+            // The processed command is trimmed when written, plain ASCII is sent as is.
+            command.setWireBytes(isAscii(processed) ? processed : CommUtils.toWireBytes(processedString));
+            return command;
+        } catch (RuntimeException e) {
+            throw new IOException("Corrupt data found while reading gcode stream row " + row, e);
+        }
+    }
+
+    // Reads a length prefixed byte array at an offset of the file.
+    private byte[] readBytes(long offset) throws IOException {
+        int length = rows.at(offset, 4).getInt();
+        if (length == 0) {
+            return EMPTY;
+        }
+        byte[] bytes = new byte[length];
+        rows.at(offset + 4, length).get(bytes);
+        return bytes;
+    }
+
+    private static String toString(byte[] bytes) {
+        return bytes.length == 0 ? "" : new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static boolean isAscii(byte[] bytes) {
+        for (byte b : bytes) {
+            if (b < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        // The mappings are released once the buffers are garbage collected.
+        closed = true;
+        rows.buffer = null;
+        index.buffer = null;
+        try {
+            channel.close();
+        } finally {
+            file.close();
+        }
+    }
+}
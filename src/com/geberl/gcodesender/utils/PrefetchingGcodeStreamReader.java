@@ -0,0 +1,185 @@
+/*
+    Copyright 2026 Stephan Geberl
+
+    This file is part of WireCutter/Mill GCode - Sender (WGS) (5 Axis-Version).
+    WGS is derived from UGS by Will Winder (2012 - 2018)
+
+    WGS is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    UGS is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with WGS.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.geberl.gcodesender.utils;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import com.geberl.gcodesender.types.GcodeCommand;
+
+/**
+ * Reads and parses commands from another stream on a background thread, so
+ * that a slow disk doesn't stall the sender. Up to capacity commands are read
+ * ahead, the sender only takes them from the queue.
+ *
+ * The wrapped stream is only used by the prefetch thread after construction.
+ */
+public class PrefetchingGcodeStreamReader implements IGcodeStreamReader {
+    public static final int DEFAULT_CAPACITY = 1024;
+
+    // Marks the end of the stream in the queue.
+    private static final GcodeCommand END_OF_STREAM = new GcodeCommand("");
+
+    private final IGcodeStreamReader reader;
+    private final BlockingQueue<GcodeCommand> queue;
+    private final Thread prefetchThread;
+    private final int numRows;
+
+    private volatile int numRowsRemaining;
+    private volatile boolean closed = false;
+    private volatile IOException readException = null;
+    private boolean endOfStream = false;
+
+    public PrefetchingGcodeStreamReader(IGcodeStreamReader reader) {
+        this(reader, DEFAULT_CAPACITY);
+    }
+
+    public PrefetchingGcodeStreamReader(IGcodeStreamReader reader, int capacity) {
+        this.reader = reader;
+        this.queue = new ArrayBlockingQueue<>(capacity + 1);
+        this.numRows = reader.getNumRows();
+        this.numRowsRemaining = reader.getNumRowsRemaining();
+
+        this.prefetchThread = new Thread(this::prefetch, "GcodeStreamPrefetch");
+        this.prefetchThread.setDaemon(true);
+        this.prefetchThread.start();
+    }
+
+    private void prefetch() {
+        try {
+            while (!closed && reader.ready()) {
+                GcodeCommand command = reader.getNextCommand();
+                if (command == null) {
+                    break;
+                }
+                put(command);
+            }
+        } catch (IOException e) {
+            readException = e;
+        } catch (InterruptedException e) {
+            // Closed while waiting for room.
+            return;
+        }
+
+        try {
+            put(END_OF_STREAM);
+        } catch (InterruptedException ignored) {
+            // Closed while waiting for room.
+        }
+    }
+
+    private void put(GcodeCommand command) throws InterruptedException {
+        while (!closed) {
+            if (queue.offer(command, 100, TimeUnit.MILLISECONDS)) {
+                return;
+            }
+        }
+        throw new InterruptedException();
+    }
+
+    @Override
+    public boolean ready() {
+        return getNumRowsRemaining() > 0;
+    }
+
+    @Override
+    public int getNumRows() {
+        return numRows;
+    }
+
+    @Override
+    public int getNumRowsRemaining() {
+        return closed ? 0 : numRowsRemaining;
+    }
+
+    /**
+     * Returns the next prefetched command, waiting for the prefetch thread if
+     * it has fallen behind.
+     */
+    @Override
+    public GcodeCommand getNextCommand() throws IOException {
+        if (endOfStream || closed || numRowsRemaining == 0) {
+            return null;
+        }
+
+        GcodeCommand command;
+        try {
+            command = queue.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for gcode stream.");
+        }
+
+        if (command == END_OF_STREAM) {
+            endOfStream = true;
+            numRowsRemaining = 0;
+            if (readException != null && !closed) {
+                throw readException;
+            }
+            return null;
+        }
+
+        numRowsRemaining--;
+        return command;
+    }
+
+    /**
+     * Returns the number of commands which have been read ahead.
+     */
+    public int getNumPrefetched() {
+        return queue.size();
+    }
+
+    /**
+     * Stops the prefetch thread and closes the wrapped stream. Waits for a
+     * read in progress, the wrapped stream is only closed once the prefetch
+     * thread has stopped using it. A consumer waiting for a command is woken
+     * up with the end of the stream.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        prefetchThread.interrupt();
+        boolean interrupted = false;
+        while (prefetchThread.isAlive()) {
+            try {
+                prefetchThread.join();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+
+        try {
+            reader.close();
+        } finally {
+            queue.clear();
+            queue.offer(END_OF_STREAM);
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
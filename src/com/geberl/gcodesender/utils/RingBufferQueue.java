@@ -0,0 +1,181 @@
+/*
+    Copyright 2026 Stephan Geberl
+
+    This file is part of WireCutter/Mill GCode - Sender (WGS) (5 Axis-Version).
+    WGS is derived from UGS by Will Winder (2012 - 2018)
+
+    WGS is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    UGS is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with WGS.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.geberl.gcodesender.utils;
+
+import java.util.AbstractQueue;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A bounded, preallocated ring buffer queue for one producer thread and one
+ * consumer thread. Adding and removing elements does not allocate and does
+ * not take a lock.
+ *
+ * The read index is advanced with a compare-and-set so that a second thread
+ * may {@link #clear()} the queue (i.e. a cancel) while the consumer polls.
+ * Producers must be serialized by the caller.
+ *
+ * @param <E> the element type
+ */
+public class RingBufferQueue<E> extends AbstractQueue<E> {
+    private final AtomicReferenceArray<E> buffer;
+    private final int mask;
+
+    // Next slot to read, only ever moves forward.
+    private final AtomicLong head = new AtomicLong(0);
+    // Next slot to write, only written by the producer.
+    private final AtomicLong tail = new AtomicLong(0);
+
+    /**
+     * @param capacity minimum number of elements, rounded up to a power of two.
+     */
+    public RingBufferQueue(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Capacity must be positive: " + capacity);
+        }
+        int size = Integer.highestOneBit(capacity);
+        if (size < capacity) {
+            size <<= 1;
+        }
+        this.buffer = new AtomicReferenceArray<>(size);
+        this.mask = size - 1;
+    }
+
+    public int capacity() {
+        return buffer.length();
+    }
+
+    @Override
+    public boolean offer(E e) {
+        if (e == null) {
+            throw new NullPointerException();
+        }
+
+        long t = tail.get();
+        if (t - head.get() >= buffer.length()) {
+            return false;
+        }
+
+        // Publish the element before the new tail so the consumer never sees an empty slot.
+        buffer.lazySet((int) t & mask, e);
+        tail.lazySet(t + 1);
+        return true;
+    }
+
+    @Override
+    public E poll() {
+        while (true) {
+            long h = head.get();
+            if (h >= tail.get()) {
+                return null;
+            }
+
+            int index = (int) h & mask;
+            E e = buffer.get(index);
+            if (head.compareAndSet(h, h + 1)) {
+                // Release the reference unless the producer already reused the slot.
+                buffer.compareAndSet(index, e, null);
+                return e;
+            }
+        }
+    }
+
+    @Override
+    public E peek() {
+        while (true) {
+            long h = head.get();
+            if (h >= tail.get()) {
+                return null;
+            }
+
+            E e = buffer.get((int) h & mask);
+            if (e != null && head.get() == h) {
+                return e;
+            }
+        }
+    }
+
+    @Override
+    public int size() {
+        long size = tail.get() - head.get();
+        return (int) Math.max(0, Math.min(size, buffer.length()));
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return head.get() >= tail.get();
+    }
+
+    /**
+     * Drops everything that has been published so far.
+     */
+    @Override
+    public void clear() {
+        while (poll() != null) {
+            // Polling releases the slot references.
+        }
+    }
+
+    /**
+     * Weakly consistent iterator over the elements present when it was created,
+     * elements consumed while iterating are skipped.
+     */
+    @Override
+    public Iterator<E> iterator() {
+        final long start = head.get();
+        final long end = tail.get();
+
+        return new Iterator<E>() {
+            private long position = start;
+            private E next = advance();
+
+            private E advance() {
+                while (position < end) {
+                    long p = position++;
+                    if (p < head.get()) {
+                        continue;
+                    }
+                    E e = buffer.get((int) p & mask);
+                    if (e != null) {
+                        return e;
+                    }
+                }
+                return null;
+            }
+
+            @Override
+            public boolean hasNext() {
+                return next != null;
+            }
+
+            @Override
+            public E next() {
+                if (next == null) {
+                    throw new NoSuchElementException();
+                }
+                E e = next;
+                next = advance();
+                return e;
+            }
+        };
+    }
+}
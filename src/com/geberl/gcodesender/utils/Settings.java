@@ -57,6 +57,9 @@ public class Settings {
     private boolean singleStepMode = false;
     private boolean statusUpdatesEnabled = true;
     private int statusUpdateRate = 200;
+    private boolean pipelinedMode = false;
+    private boolean plannerAwareMode = false;
+    private boolean senderThreadEnabled = false;
     private Units preferredUnits = Units.MM;
 
     private boolean showSerialPortWarning = true;
@@ -260,6 +263,33 @@ public class Settings {
         this.statusUpdateRate = statusUpdateRate;
         changed();
     }
+
+    public boolean isPipelinedMode() {
+        return pipelinedMode;
+    }
+
+    public void setPipelinedMode(boolean pipelinedMode) {
+        this.pipelinedMode = pipelinedMode;
+        changed();
+    }
+
+    public boolean isPlannerAwareMode() {
+        return plannerAwareMode;
+    }
+
+    public void setPlannerAwareMode(boolean plannerAwareMode) {
+        this.plannerAwareMode = plannerAwareMode;
+        changed();
+    }
+
+    public boolean isSenderThreadEnabled() {
+        return senderThreadEnabled;
+    }
+
+    public void setSenderThreadEnabled(boolean senderThreadEnabled) {
+        this.senderThreadEnabled = senderThreadEnabled;
+        changed();
+    }
         
     public Units getPreferredUnits() {
         return (preferredUnits == null) ? Units.MM : preferredUnits;